@@ -0,0 +1,125 @@
+package facades;
+
+import database.connect.ConnectionManager;
+import datatype.Geslacht;
+import datatype.Standplaats;
+import datatype.Status;
+import exception.DBException;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Creates and seeds the tables of the application in the database configured for the benchmarks. <br />
+ * The tables are recreated on every call, so every trial starts from the same number of rows.
+ */
+final class BenchmarkDatabase
+{
+    // The number of rows sent per batch while seeding.
+    private static final int BATCH_SIZE = 1000;
+
+    private BenchmarkDatabase()
+    {
+    }
+
+    /**
+     * Recreates the tables and fills them with generated rows. Fiets and Lid keys run from 1 up, every
+     * Rit refers to an existing Fiets and Lid.
+     * @param fietsen   The number of Fiets rows.
+     * @param leden     The number of Lid rows.
+     * @param ritten    The number of Rit rows.
+     * @throws DBException  Thrown when no connection could be made.
+     * @throws SQLException Thrown when the tables could not be created or filled.
+     */
+    static void seed(int fietsen, int leden, int ritten) throws DBException, SQLException
+    {
+        try (Connection connection = ConnectionManager.getConnection();
+             Statement statement = connection.createStatement())
+        {
+            statement.execute("DROP TABLE IF EXISTS Rit");
+            statement.execute("DROP TABLE IF EXISTS Fiets");
+            statement.execute("DROP TABLE IF EXISTS Lid");
+            statement.execute("CREATE TABLE Fiets (registratienummer INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "standplaats VARCHAR(20), status VARCHAR(20), opmerkingen VARCHAR(255))");
+            statement.execute("CREATE TABLE Lid (rijksregisternummer VARCHAR(11) PRIMARY KEY, " +
+                    "naam VARCHAR(50), voornaam VARCHAR(50), geslacht VARCHAR(1), telnr VARCHAR(20), " +
+                    "emailadres VARCHAR(100), start_lidmaatschap DATE, einde_lidmaatschap DATE, " +
+                    "opmerkingen VARCHAR(255))");
+            statement.execute("CREATE TABLE Rit (ritID INT AUTO_INCREMENT PRIMARY KEY, starttijd DATETIME, " +
+                    "eindtijd DATETIME, prijs DECIMAL(10, 2), lidRijksregisternummer VARCHAR(11), " +
+                    "fietsRegistratienummer INT)");
+            // The indexes recommended by RitDB for looking up open rides.
+            statement.execute("CREATE INDEX rit_fiets_open ON Rit (fietsRegistratienummer, eindtijd)");
+            statement.execute("CREATE INDEX rit_lid_open ON Rit (lidRijksregisternummer, eindtijd)");
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO Fiets (registratienummer, standplaats, status, opmerkingen) VALUES (?, ?, ?, ?)"))
+            {
+                for (int i = 1; i <= fietsen; ++i)
+                {
+                    insert.setInt(1, i);
+                    insert.setString(2, Standplaats.values()[i % Standplaats.values().length].toString());
+                    insert.setString(3, Status.values()[i % Status.values().length].toString());
+                    insert.setString(4, i % 4 == 0 ? null : "fiets " + i);
+                    addBatch(insert, i);
+                }
+                insert.executeBatch();
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO Lid (rijksregisternummer, " +
+                    "naam, voornaam, geslacht, telnr, emailadres, start_lidmaatschap) VALUES (?, ?, ?, ?, ?, ?, ?)"))
+            {
+                for (int i = 1; i <= leden; ++i)
+                {
+                    insert.setString(1, rijksregisternummer(i));
+                    insert.setString(2, "Naam" + i);
+                    insert.setString(3, "Voornaam" + i);
+                    insert.setString(4, Geslacht.values()[i % 2].toString());
+                    insert.setString(5, "0470" + i);
+                    insert.setString(6, "lid" + i + "@vives.be");
+                    insert.setDate(7, java.sql.Date.valueOf("2017-01-01"));
+                    addBatch(insert, i);
+                }
+                insert.executeBatch();
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO Rit (starttijd, eindtijd, " +
+                    "prijs, lidRijksregisternummer, fietsRegistratienummer) VALUES (?, ?, ?, ?, ?)"))
+            {
+                long start = Timestamp.valueOf("2017-01-01 08:00:00").getTime();
+                for (int i = 1; i <= ritten; ++i)
+                {
+                    insert.setTimestamp(1, new Timestamp(start + i * 60000L));
+                    // Every tenth ride is still open.
+                    insert.setTimestamp(2, i % 10 == 0 ? null : new Timestamp(start + i * 60000L + 1800000L));
+                    insert.setBigDecimal(3, i % 10 == 0 ? null : BigDecimal.valueOf(250, 2));
+                    insert.setString(4, rijksregisternummer(1 + i % Math.max(leden, 1)));
+                    insert.setInt(5, 1 + i % Math.max(fietsen, 1));
+                    addBatch(insert, i);
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    private static void addBatch(PreparedStatement insert, int row) throws SQLException
+    {
+        insert.addBatch();
+        if (row % BATCH_SIZE == 0)
+            insert.executeBatch();
+    }
+
+    /**
+     * Generates the rijksregisternummer of the n-th seeded Lid.
+     * @param n The number of the Lid.
+     * @return  The rijksregisternummer.
+     */
+    static String rijksregisternummer(int n)
+    {
+        return String.format("%011d", n);
+    }
+}
@@ -0,0 +1,28 @@
+package facades;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, to be kept for regression tracking. <br />
+ * The benchmarks form their own source root next to src and test and need jmh-core, jmh-generator-annprocess
+ * and the H2 driver on the classpath. Compile them together with src, so the annotation processor generates
+ * the harness, and run from the project root:
+ * <pre>
+ * java -cp out:lib/* facades.BenchmarkRunner [result.json] [regex]
+ * </pre>
+ * The numbers of seeded rows can be changed through the parameters of ModelBenchmark, e.g. with
+ * <code>-p ritten=100000</code> when running through the JMH command line instead.
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws Exception
+    {
+        new Runner(new OptionsBuilder()
+                .include(args.length > 1 ? args[1] : "facades\\..*Benchmark")
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 0 ? args[0] : "jmh-result.json")
+                .build()).run();
+    }
+}
@@ -0,0 +1,154 @@
+package facades;
+
+import databag.Fiets;
+import databag.Rit;
+import database.connect.ConnectionManager;
+import datatype.Standplaats;
+import datatype.Status;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the hot paths of Model against the seeded benchmark database: construction, single lookups,
+ * full scans, hydration of a single row and batch inserts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-DdbProperties=benchmark/DB.properties")
+public class ModelBenchmark
+{
+    @Param("1000")
+    public int fietsen;
+    @Param("1000")
+    public int leden;
+    @Param("10000")
+    public int ritten;
+    // The number of models stored per invocation of storeAll.
+    @Param("100")
+    public int batchSize;
+
+    // The key of the next Fiets to find, cycling through all seeded keys.
+    private int next;
+    // The models to store in the next invocation of storeAll.
+    private ArrayList<Fiets> batch;
+
+    @Setup(Level.Trial)
+    public void seed() throws Exception
+    {
+        BenchmarkDatabase.seed(fietsen, leden, ritten);
+    }
+
+    /**
+     * Builds fresh models for every invocation, so that the keys generated by an earlier invocation are
+     * never sent again. Storing a batch takes long enough for the overhead of this level to be negligible.
+     */
+    @Setup(Level.Invocation)
+    public void prepareBatch()
+    {
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; ++i)
+        {
+            Fiets fiets = new Fiets();
+            fiets.setStandplaats(Standplaats.Brugge);
+            fiets.setStatus(Status.actief);
+            batch.add(fiets);
+        }
+    }
+
+    /**
+     * Removes the rows stored by storeAll, so every iteration scans the same number of rows.
+     */
+    @TearDown(Level.Iteration)
+    public void removeStored() throws Exception
+    {
+        try (Connection connection = ConnectionManager.getConnection();
+             Statement statement = connection.createStatement())
+        {
+            statement.execute("DELETE FROM Fiets WHERE registratienummer > " + fietsen);
+        }
+    }
+
+    @Benchmark
+    public Fiets construct()
+    {
+        return new Fiets();
+    }
+
+    @Benchmark
+    public Fiets find()
+    {
+        next = next % fietsen + 1;
+        return new Fiets().find(next);
+    }
+
+    @Benchmark
+    public ArrayList<Rit> getAll()
+    {
+        return new Rit().select().get();
+    }
+
+    @Benchmark
+    public long streamAll()
+    {
+        try (Stream<Rit> rides = new Rit().select().stream())
+        {
+            return rides.mapToLong(Rit::getFietsRegistratienummer).sum();
+        }
+    }
+
+    @Benchmark
+    public ArrayList<Object> storeAll()
+    {
+        return new Fiets().storeAll(batch, batchSize);
+    }
+
+    /**
+     * Holds an open ResultSet positioned at a Rit row, to measure filling a model without the query.
+     */
+    @State(Scope.Thread)
+    public static class Row
+    {
+        Connection connection;
+        PreparedStatement statement;
+        ResultSet set;
+        HydrationPlan.Binding binding;
+        // Typed as Model, as fill is package private and Rit lives in another package.
+        Model<Rit> model;
+
+        @Setup(Level.Trial)
+        public void open(ModelBenchmark benchmark) throws Exception
+        {
+            connection = ConnectionManager.getConnection();
+            statement = connection.prepareStatement("SELECT * FROM Rit");
+            set = statement.executeQuery();
+            set.next();
+            model = new Rit();
+            binding = SchemaRegistry.lookup(Rit.class).getPlan().bind();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception
+        {
+            set.close();
+            statement.close();
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public Model<Rit> fill(Row row)
+    {
+        row.model.fill(row.binding, row.set);
+        return row.model;
+    }
+}
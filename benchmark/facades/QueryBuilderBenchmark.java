@@ -0,0 +1,61 @@
+package facades;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the SQL generation of QueryBuilder for the shapes the models produce. No database is needed,
+ * toSql never touches the connection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuilderBenchmark
+{
+    private QueryBuilder query;
+    // The fields of a Fiets, as Model.prepareFields hands them to insert and update.
+    private HashMap<String, String> fields;
+
+    @Setup
+    public void setUp()
+    {
+        query = new QueryBuilder("Fiets");
+        fields = new HashMap<>();
+        fields.put("registratienummer", "42");
+        fields.put("standplaats", "Brugge");
+        fields.put("status", "actief");
+        fields.put("opmerkingen", null);
+    }
+
+    /**
+     * The query of Model.find.
+     */
+    @Benchmark
+    public String findSql()
+    {
+        String sql = query.select().where("registratienummer", "42").toSql();
+        query.reset();
+        return sql;
+    }
+
+    @Benchmark
+    public String insertSql()
+    {
+        String sql = query.insert(fields).toSql();
+        query.reset();
+        return sql;
+    }
+
+    @Benchmark
+    public String updateSql()
+    {
+        String sql = query.update(fields).where("registratienummer", "42").toSql();
+        query.reset();
+        return sql;
+    }
+}
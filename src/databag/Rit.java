@@ -4,6 +4,7 @@ package databag;
 import datatype.Rijksregisternummer;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import facades.Model;
 
@@ -26,19 +27,36 @@ public class Rit extends Model<Rit>
     }
 
     public LocalDateTime getStarttijd() {
-        return LocalDateTime.parse((String) getField("starttijd"));
+        return toLocalDateTime(getField("starttijd"));
     }
 
     public void setStarttijd(LocalDateTime starttijd) {
-         setField("starttijd", starttijd);
+         setField("starttijd", starttijd == null ? null : Timestamp.valueOf(starttijd));
     }
 
     public LocalDateTime getEindtijd() {
-        return LocalDateTime.parse((String) getField("eindtijd"));
+        return toLocalDateTime(getField("eindtijd"));
     }
 
     public void setEindtijd(LocalDateTime eindtijd) {
-         setField("eindtijd", eindtijd);
+         setField("eindtijd", eindtijd == null ? null : Timestamp.valueOf(eindtijd));
+    }
+
+    /**
+     * Whether the ride is still open, i.e. the bike has not been returned yet.
+     * @return True if the ride has no end time.
+     */
+    public boolean isActief() {
+        return getField("eindtijd") == null;
+    }
+
+    // DATETIME columns are read as a Timestamp, older schemas store the times as text.
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof Timestamp)
+            return ((Timestamp) value).toLocalDateTime();
+        return LocalDateTime.parse(value.toString());
     }
 
     public BigDecimal getPrijs() {
@@ -52,20 +70,20 @@ public class Rit extends Model<Rit>
     
     public String getLidRijksregisternummer() {
         
-            return (String) getField("getRijksregisternummer()");
+            return (String) getField("lidRijksregisternummer");
         
     }
 
     public void setLidRijksregisternummer(Rijksregisternummer lidRijksregisternummer) {
-         setField("lidRijksregisternummer",lidRijksregisternummer);
+         setField("lidRijksregisternummer",lidRijksregisternummer.getRijksregisternummer());
     }
 
     public int getFietsRegistratienummer() {
-        return (int) getField("fietsRegistratienummer");
+        return getIntField("fietsRegistratienummer");
     }
 
     public void setFietsRegistratienummer(int fietsRegistratienummer) {
-         setField("fietsRegistratienummer", fietsRegistratienummer);
+         setIntField("fietsRegistratienummer", fietsRegistratienummer);
     }
 
 }
@@ -4,6 +4,7 @@ import databag.Fiets;
 import databag.Rit;
 import datatype.Status;
 import facades.Model;
+import facades.Page;
 
 
 
@@ -21,8 +22,7 @@ public class FietsDB implements InterfaceFietsDB
     @Override
     public void wijzigenToestandFiets( Integer regnr,  Status status)
     {
-        Fiets fiets = new Fiets();
-        fiets.find(regnr);
+        Fiets fiets = new Fiets().find(regnr);
         fiets.setStatus(status);
         fiets.update();
     }
@@ -30,8 +30,7 @@ public class FietsDB implements InterfaceFietsDB
     @Override
     public void wijzigenOpmerkingFiets( Integer regnr, String opmerking)
     {
-        Fiets fiets = new Fiets();
-        fiets.find(regnr);
+        Fiets fiets = new Fiets().find(regnr);
         fiets.setOpmerking(opmerking);
         fiets.update();
     }
@@ -49,4 +48,16 @@ public class FietsDB implements InterfaceFietsDB
     {
         return Model.constructModel(Fiets.class).select().get();
     }
+
+    /**
+     * Zoekt een pagina fietsen, gesorteerd op registratienummer.
+     * @param aantal    Het maximale aantal fietsen op de pagina.
+     * @param vervolg   Het vervolgtoken van de vorige pagina of null voor de eerste pagina.
+     * @return De pagina.
+     */
+    @Override
+    public Page<Fiets> zoekFietsen(int aantal, String vervolg)
+    {
+        return new Fiets().page(aantal, vervolg);
+    }
 }
@@ -8,6 +8,7 @@ package database;
 import databag.Fiets;
 import datatype.Status;
 import exception.DBException;
+import facades.Page;
 import java.util.ArrayList;
 
 /**
@@ -25,4 +26,6 @@ public interface InterfaceFietsDB {
      Fiets zoekFiets(Integer regnr) throws Exception;
 
      ArrayList<Fiets> zoekAlleFietsen() throws Exception;
+
+     Page<Fiets> zoekFietsen(int aantal, String vervolg) throws Exception;
 }
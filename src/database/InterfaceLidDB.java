@@ -6,7 +6,8 @@
 package database;
 
 import databag.Lid;
-
+import facades.Page;
+
 ;
 
 import java.util.ArrayList;
@@ -28,4 +29,8 @@ public interface InterfaceLidDB {
     
     ArrayList<Lid> zoekAlleLeden() throws Exception;
 
+    Page<Lid> zoekLeden(int aantal, String vervolg) throws Exception;
+
+    Page<Lid> zoekLeden(int aantal, String vervolg, String filter) throws Exception;
+
 }
@@ -3,6 +3,8 @@ package database;
 import databag.Lid;
 import databag.Rit;
 import databag.Fiets;
+import facades.Comparator;
+import facades.Page;
 
 import java.util.ArrayList;
 
@@ -28,11 +30,10 @@ public class LidDB implements InterfaceLidDB {
     @Override
     public void uitschrijvenLid(String rr)  
     {
-        if (!rit.where("lid_rijksregisternummer", rr).get().isEmpty())
+        if (rit.where("lidRijksregisternummer", rr).exists())
              throw new RuntimeException();
         
-        lid.find(rr);
-        lid.delete();
+        new Lid().where("rijksregisternummer", rr).delete();
     }
 
     
@@ -48,6 +49,42 @@ public class LidDB implements InterfaceLidDB {
         return lid.select("*").get();
     }
 
+    /**
+     * Zoekt een pagina leden, gesorteerd op rijksregisternummer.
+     * @param aantal    Het maximale aantal leden op de pagina.
+     * @param vervolg   Het vervolgtoken van de vorige pagina of null voor de eerste pagina.
+     * @return De pagina.
+     */
+    @Override
+    public Page<Lid> zoekLeden(int aantal, String vervolg)
+    {
+        return new Lid().page(aantal, vervolg);
+    }
+
+    /**
+     * Zoekt een pagina leden waarvan de naam, de voornaam of het rijksregisternummer begint met de filter,
+     * gesorteerd op rijksregisternummer. De filter wordt door de database toegepast.
+     * @param aantal    Het maximale aantal leden op de pagina.
+     * @param vervolg   Het vervolgtoken van de vorige pagina of null voor de eerste pagina.
+     * @param filter    Het begin van de naam, voornaam of het rijksregisternummer, null of leeg voor alle leden.
+     * @return De pagina.
+     */
+    @Override
+    public Page<Lid> zoekLeden(int aantal, String vervolg, String filter)
+    {
+        if (filter == null || filter.trim().isEmpty())
+            return zoekLeden(aantal, vervolg);
+        String begin = escapeLike(filter.trim()) + '%';
+        return new Lid().where(Comparator.OR(Comparator.LIKE("naam", begin), Comparator.LIKE("voornaam", begin),
+                Comparator.LIKE("rijksregisternummer", begin))).page(aantal, vervolg);
+    }
+
+    // Zorgt ervoor dat % en _ in de filter letterlijk gezocht worden.
+    private static String escapeLike(String waarde)
+    {
+        return waarde.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
    
   
 }
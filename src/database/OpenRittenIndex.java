@@ -0,0 +1,74 @@
+package database;
+
+import databag.Rit;
+import facades.Comparator;
+import facades.Projection;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory index of the rides that are still open, i.e. have no eindtijd, by bike and by member. <br />
+ * The index is loaded with a single query the first time it is used and kept up to date by RitDB when rides
+ * are added or closed. It is therefore only correct when this application is the only one writing to the
+ * Rit table; enable it with index.openRitten=true in DB.properties.
+ */
+final class OpenRittenIndex
+{
+    // The ritIDs of the open rides by fietsRegistratienummer.
+    private final ConcurrentHashMap<Integer, Set<Integer>> vanFiets = new ConcurrentHashMap<>();
+    // The ritIDs of the open rides by lidRijksregisternummer.
+    private final ConcurrentHashMap<String, Set<Integer>> vanLid = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the open rides, reading only the columns the index needs.
+     */
+    OpenRittenIndex()
+    {
+        for (Projection x : new Rit().select(new String[]{"ritID", "lidRijksregisternummer", "fietsRegistratienummer"})
+                .where(Comparator.ISNULL("eindtijd")).project())
+            open((Integer) x.get("ritID"), (String) x.get("lidRijksregisternummer"),
+                    (Integer) x.get("fietsRegistratienummer"));
+    }
+
+    /**
+     * @param regnr The registratienummer of the bike.
+     * @return The ritIDs of the open rides of the bike, empty if there are none.
+     */
+    Set<Integer> zoekVanFiets(Integer regnr)
+    {
+        return vanFiets.getOrDefault(regnr, Collections.emptySet());
+    }
+
+    /**
+     * @param rr    The rijksregisternummer of the member.
+     * @return The ritIDs of the open rides of the member, empty if there are none.
+     */
+    Set<Integer> zoekVanLid(String rr)
+    {
+        return vanLid.getOrDefault(rr, Collections.emptySet());
+    }
+
+    /**
+     * Registers a ride as open.
+     */
+    void open(Integer ritID, String rr, Integer regnr)
+    {
+        if (regnr != null)
+            vanFiets.computeIfAbsent(regnr, k -> ConcurrentHashMap.newKeySet()).add(ritID);
+        if (rr != null)
+            vanLid.computeIfAbsent(rr, k -> ConcurrentHashMap.newKeySet()).add(ritID);
+    }
+
+    /**
+     * Registers a ride as closed.
+     */
+    void sluit(Integer ritID, String rr, Integer regnr)
+    {
+        if (regnr != null)
+            vanFiets.computeIfPresent(regnr, (k, ritten) -> ritten.remove(ritID) && ritten.isEmpty() ? null : ritten);
+        if (rr != null)
+            vanLid.computeIfPresent(rr, (k, ritten) -> ritten.remove(ritID) && ritten.isEmpty() ? null : ritten);
+    }
+}
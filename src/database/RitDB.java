@@ -1,58 +1,150 @@
 package database;
 
+import databag.Fiets;
+import databag.Lid;
 import databag.Rit;
+import database.connect.DBProp;
+import facades.Comparator;
+import facades.Transaction;
 
 
 
 import java.util.ArrayList;
+import java.util.Set;
 
+/**
+ * Stores and looks up rides. Every lookup is a single query on an indexed condition, an open ride being a
+ * ride without eindtijd. The lookups assume the following indexes on the Rit table:
+ * <pre>
+ * CREATE INDEX rit_fiets_open ON Rit (fietsRegistratienummer, eindtijd);
+ * CREATE INDEX rit_lid_open ON Rit (lidRijksregisternummer, eindtijd);
+ * </pre>
+ * With index.openRitten=true in DB.properties the open rides are additionally kept in memory, so looking up
+ * the open rides of a bike or member only queries the database when there are any. Within a Transaction the
+ * index is only updated once the transaction is committed.
+ * <p>
+ * Within a Transaction the open rides are always read from the database with a locking read, after locking
+ * the row of the bike or member itself. Two transactions checking the same bike then run one after the other,
+ * so the second one sees the ride added by the first. The index is not used there, as it locks nothing.
+ */
 public class RitDB implements InterfaceRitDB {
 
+    // Created on first use when enabled, null otherwise.
+    private static volatile OpenRittenIndex index;
+
+    private static OpenRittenIndex getIndex()
+    {
+        if (!DBProp.isOpenRittenIndex())
+            return null;
+        if (index == null) {
+            synchronized (RitDB.class) {
+                if (index == null)
+                    index = new OpenRittenIndex();
+            }
+        }
+        return index;
+    }
     
     @Override
     public Integer toevoegenRit(Rit rit)
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        Integer ritID = (Integer) rit.store().get(0);
+        OpenRittenIndex open = getIndex();
+        if (open != null && rit.isActief()) {
+            String rr = rit.getLidRijksregisternummer();
+            Integer regnr = rit.getFietsRegistratienummer();
+            Transaction.afterCommit(() -> open.open(ritID, rr, regnr));
+        }
+        return ritID;
     }
 
     @Override
     public void afsluitenRit(Rit rit)
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        rit.update();
+        OpenRittenIndex open = getIndex();
+        if (open != null && !rit.isActief()) {
+            Integer ritID = rit.getRitID();
+            String rr = rit.getLidRijksregisternummer();
+            Integer regnr = rit.getFietsRegistratienummer();
+            Transaction.afterCommit(() -> open.sluit(ritID, rr, regnr));
+        }
     }
 
     
     @Override
-    public ArrayList zoekAlleRitten()
+    public ArrayList<Rit> zoekAlleRitten()
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return new Rit().select().get();
     }
 
     
     @Override
     public Rit zoekRit(Integer ritID)
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        return new Rit().find(ritID);
     }
 
+    /**
+     * Zoekt de eerste rit van een lid.
+     * @param rr    Het rijksregisternummer van het lid.
+     * @return Het laagste ritID van het lid of 0 als het lid nog geen ritten heeft.
+     */
     @Override
     public int zoekEersteRitVanLid(String rr)
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        Object eerste = new Rit().where("lidRijksregisternummer", rr).min("ritID");
+        return eerste == null ? 0 : ((Number) eerste).intValue();
     }
 
     
     @Override
-    public ArrayList zoekActieveRittenVanLid(String rr)
+    public ArrayList<Rit> zoekActieveRittenVanLid(String rr)
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        if (Transaction.isActive()) {
+            new Lid().where("rijksregisternummer", rr).forUpdate().exists();
+            return zoekOpenRitten(Comparator.EQ("lidRijksregisternummer", rr), true);
+        }
+        OpenRittenIndex open = getIndex();
+        if (open == null)
+            return zoekOpenRitten(Comparator.EQ("lidRijksregisternummer", rr), false);
+        return zoekRitten(open.zoekVanLid(rr));
     }
 
     
     @Override
-    public ArrayList zoekActieveRittenVanFiets(Integer regnr)
+    public ArrayList<Rit> zoekActieveRittenVanFiets(Integer regnr)
+    {
+        if (Transaction.isActive()) {
+            new Fiets().where("registratienummer", String.valueOf(regnr)).forUpdate().exists();
+            return zoekOpenRitten(Comparator.EQ("fietsRegistratienummer", String.valueOf(regnr)), true);
+        }
+        OpenRittenIndex open = getIndex();
+        if (open == null)
+            return zoekOpenRitten(Comparator.EQ("fietsRegistratienummer", String.valueOf(regnr)), false);
+        return zoekRitten(open.zoekVanFiets(regnr));
+    }
+
+    /**
+     * Reads the open rides of a bike or member from the database.
+     * @param eigenaar  The comparison selecting the bike or member.
+     * @param vergrendel Whether to lock the rides until the end of the transaction.
+     */
+    private static ArrayList<Rit> zoekOpenRitten(Comparator eigenaar, boolean vergrendel)
+    {
+        Rit rit = new Rit().select().where(eigenaar.and(Comparator.ISNULL("eindtijd")));
+        return (vergrendel ? rit.forUpdate() : rit).get();
+    }
+
+    /**
+     * Reads the rides with the given ids in one query, without querying when there are none.
+     */
+    private static ArrayList<Rit> zoekRitten(Set<Integer> ritIDs)
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        if (ritIDs.isEmpty())
+            return new ArrayList<>();
+        String[] ids = ritIDs.stream().map(String::valueOf).toArray(String[]::new);
+        return new Rit().select().where(Comparator.IN("ritID", ids)).get();
     }
 
    
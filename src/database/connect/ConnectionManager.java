@@ -2,25 +2,51 @@ package database.connect;
 
 
 import exception.DBException;
-
+
 ;
 
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
 
 public class ConnectionManager {
 
+    // The pool handing out all connections of the application, created on first use.
+    private static volatile ConnectionPool pool;
+
+    /**
+     * Borrows a connection from the pool. Closing the connection returns it to the pool.
+     * @return A connection to the database.
+     * @throws DBException Thrown when no connection could be made within the configured timeout.
+     */
     public static Connection getConnection() throws DBException
     {
-        try {
-            //driver laden
-            Class.forName(DBProp.getDriver()).getDeclaredConstructors()[0].newInstance();
-            return DriverManager.getConnection(DBProp.getDbUrl(), DBProp.getLogin(), DBProp.getPaswoord());
-        } catch ( ClassNotFoundException | InstantiationException | IllegalAccessException | SQLException | InvocationTargetException ex) {
-            ex.printStackTrace();
-            throw new DBException("Connectie met de database mislukt");
+        return getPool().borrow();
+    }
+
+    /**
+     * Returns the connection pool, loading the driver and creating the pool the first time.
+     * @return The connection pool.
+     * @throws DBException Thrown when the driver could not be loaded.
+     */
+    public static ConnectionPool getPool() throws DBException
+    {
+        if (pool == null) {
+            synchronized (ConnectionManager.class) {
+                if (pool == null) {
+                    try {
+                        //driver laden
+                        Class.forName(DBProp.getDriver()).getDeclaredConstructors()[0].newInstance();
+                    } catch ( ClassNotFoundException | InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+                        ex.printStackTrace();
+                        throw new DBException("Connectie met de database mislukt");
+                    }
+                    pool = new ConnectionPool(DBProp.getPoolMinimum(), DBProp.getPoolMaximum(),
+                            DBProp.getPoolIdleTimeout(), DBProp.getPoolBorrowTimeout(),
+                            DBProp.getPoolValidationTimeout(), DBProp.getStatementCacheSize(),
+                            DBProp.getPoolLeakDetectionThreshold());
+                }
+            }
         }
+        return pool;
     }
 }
@@ -0,0 +1,352 @@
+package database.connect;
+
+import exception.DBException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of connections to the persistent storage.
+ * Connections handed out by the pool are wrappers around a physical connection: calling close on them
+ * returns the physical connection to the pool instead of closing the socket. <br />
+ * Idle connections are validated before they are handed out again and connections that stayed idle for
+ * longer than the idle timeout are closed, as long as the pool keeps its minimum size. <br />
+ * Every physical connection keeps its own cache of prepared statements, so preparing the same SQL twice
+ * on a pooled connection reuses the statement prepared the first time. <br />
+ * With a leak detection threshold, statements and result sets that stay open for longer than the threshold
+ * are reported together with the place they were created, so leaks in long running processes can be found.
+ */
+public class ConnectionPool
+{
+    // The connections that are open but not handed out, most recently used first.
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    // One permit for every connection that may be handed out at the same time.
+    private final Semaphore permits;
+    // The number of connections the pool tries to keep open.
+    private final int minimum;
+    // The time in milliseconds an idle connection is kept before it is closed.
+    private final long idleTimeout;
+    // The time in milliseconds a caller waits for a free connection.
+    private final long borrowTimeout;
+    // The time in seconds a connection gets to answer the validation check.
+    private final int validationTimeout;
+    // The number of prepared statements kept per physical connection.
+    private final int statementCacheSize;
+    // The thread evicting connections that have been idle for too long.
+    private final ScheduledExecutorService evictor;
+    // The tracker of open statements, null when leak detection is disabled.
+    private final LeakDetector leaks;
+    // Opens the physical connections.
+    private final ConnectionFactory factory;
+
+    /**
+     * Opens a new physical connection to the persistent storage.
+     */
+    interface ConnectionFactory
+    {
+        Connection open() throws SQLException;
+    }
+
+    /**
+     * A physical connection together with its prepared statements and the moment it was last returned.
+     */
+    private static class PhysicalConnection
+    {
+        final Connection connection;
+        final StatementCache statements;
+        long since;
+
+        PhysicalConnection(Connection connection, int statementCacheSize)
+        {
+            this.connection = connection;
+            this.statements = new StatementCache(connection, statementCacheSize);
+            this.since = System.currentTimeMillis();
+        }
+
+        void close()
+        {
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Constructs a new pool and opens the minimum number of connections.
+     * @param minimum               The number of connections the pool keeps open.
+     * @param maximum               The number of connections that can be handed out at the same time.
+     * @param idleTimeout           The time in milliseconds an unused connection may stay idle.
+     * @param borrowTimeout         The time in milliseconds a caller waits for a free connection.
+     * @param validationTimeout     The time in seconds a connection gets to answer the validation check.
+     * @param statementCacheSize    The number of prepared statements kept per connection.
+     */
+    public ConnectionPool(int minimum, int maximum, long idleTimeout, long borrowTimeout, int validationTimeout,
+                          int statementCacheSize)
+    {
+        this(minimum, maximum, idleTimeout, borrowTimeout, validationTimeout, statementCacheSize, 0);
+    }
+
+    /**
+     * Constructs a new pool and opens the minimum number of connections.
+     * @param minimum               The number of connections the pool keeps open.
+     * @param maximum               The number of connections that can be handed out at the same time.
+     * @param idleTimeout           The time in milliseconds an unused connection may stay idle.
+     * @param borrowTimeout         The time in milliseconds a caller waits for a free connection.
+     * @param validationTimeout     The time in seconds a connection gets to answer the validation check.
+     * @param statementCacheSize    The number of prepared statements kept per connection.
+     * @param leakDetectionThreshold The time in milliseconds a statement may stay open before it is
+     *                               reported, zero to disable leak detection.
+     */
+    public ConnectionPool(int minimum, int maximum, long idleTimeout, long borrowTimeout, int validationTimeout,
+                          int statementCacheSize, long leakDetectionThreshold)
+    {
+        this(minimum, maximum, idleTimeout, borrowTimeout, validationTimeout, statementCacheSize,
+                leakDetectionThreshold,
+                () -> DriverManager.getConnection(DBProp.getDbUrl(), DBProp.getLogin(), DBProp.getPaswoord()));
+    }
+
+    /**
+     * Constructs a new pool that opens its connections with the given factory instead of the DriverManager.
+     * @param factory   Opens the physical connections.
+     * @see #ConnectionPool(int, int, long, long, int, int, long)
+     */
+    ConnectionPool(int minimum, int maximum, long idleTimeout, long borrowTimeout, int validationTimeout,
+                   int statementCacheSize, long leakDetectionThreshold, ConnectionFactory factory)
+    {
+        if (maximum < 1 || minimum < 0 || minimum > maximum)
+            throw new IllegalArgumentException("Ongeldige grootte voor de connectiepool: " + minimum + " - " + maximum);
+
+        this.minimum = minimum;
+        this.permits = new Semaphore(maximum, true);
+        this.idleTimeout = idleTimeout;
+        this.borrowTimeout = borrowTimeout;
+        this.validationTimeout = validationTimeout;
+        this.statementCacheSize = statementCacheSize;
+        this.factory = factory;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeout / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        this.leaks = leakDetectionThreshold > 0 ? new LeakDetector(leakDetectionThreshold) : null;
+        if (leaks != null) {
+            long interval = Math.max(1000, leakDetectionThreshold / 2);
+            evictor.scheduleWithFixedDelay(leaks::check, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        fill();
+    }
+
+    /**
+     * Hands out a connection, reusing an idle one when possible.
+     * The connection must be closed by the caller in order to return it to the pool.
+     * @return A valid connection.
+     * @throws DBException Thrown when no connection became available within the borrow timeout or the
+     * database could not be reached.
+     */
+    public Connection borrow() throws DBException
+    {
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS))
+                throw new DBException("Geen vrije connectie met de database beschikbaar");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBException("Wachten op een connectie met de database onderbroken");
+        }
+
+        try {
+            PhysicalConnection candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                if (isValid(candidate.connection))
+                    return wrap(candidate);
+                candidate.close();
+            }
+            return wrap(open());
+        } catch (SQLException e) {
+            permits.release();
+            e.printStackTrace();
+            throw new DBException("Connectie met de database mislukt");
+        }
+    }
+
+    /**
+     * Returns the number of connections that are open but not handed out.
+     * @return The number of idle connections.
+     */
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    /**
+     * Returns the number of statements handed out that have not been closed yet, together with their result
+     * sets that have not been closed yet.
+     * @return The number of open statements and result sets or -1 when leak detection is disabled.
+     */
+    public int getOpenStatementCount()
+    {
+        return leaks == null ? -1 : leaks.size();
+    }
+
+    /**
+     * Closes all idle connections and stops the eviction thread.
+     * Connections that are still handed out are closed when they are returned.
+     */
+    public void shutdown()
+    {
+        evictor.shutdownNow();
+        PhysicalConnection candidate;
+        while ((candidate = idle.pollFirst()) != null)
+            candidate.close();
+    }
+
+    /**
+     * Puts a physical connection back into the pool, resetting any state a borrower may have left behind.
+     * @param physical The physical connection to be returned.
+     */
+    private void release(PhysicalConnection physical)
+    {
+        try {
+            if (evictor.isShutdown() || physical.connection.isClosed())
+                physical.close();
+            else {
+                if (!physical.connection.getAutoCommit()) {
+                    physical.connection.rollback();
+                    physical.connection.setAutoCommit(true);
+                }
+                physical.since = System.currentTimeMillis();
+                idle.offerFirst(physical);
+            }
+        } catch (SQLException e) {
+            physical.close();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes connections that have been idle for longer than the idle timeout, oldest first, without going
+     * below the minimum size. Runs periodically on the eviction thread.
+     */
+    void evictIdle()
+    {
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        Iterator<PhysicalConnection> oldest = idle.descendingIterator();
+        while (oldest.hasNext() && idle.size() > minimum) {
+            PhysicalConnection candidate = oldest.next();
+            if (candidate.since < deadline && idle.removeLastOccurrence(candidate))
+                candidate.close();
+        }
+        fill();
+    }
+
+    /**
+     * Opens connections until the minimum number of idle connections is reached.
+     */
+    private void fill()
+    {
+        try {
+            while (idle.size() < minimum && permits.availablePermits() > idle.size())
+                idle.offerLast(open());
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean isValid(Connection connection)
+    {
+        try {
+            return connection.isValid(validationTimeout);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PhysicalConnection open() throws SQLException
+    {
+        return new PhysicalConnection(factory.open(), statementCacheSize);
+    }
+
+    /**
+     * Wraps a physical connection so that closing it hands it back to this pool.
+     */
+    private Connection wrap(PhysicalConnection physical)
+    {
+        PooledConnection handler = new PooledConnection(physical);
+        handler.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+        return handler.proxy;
+    }
+
+    /**
+     * The handler behind every handed out connection. Every call is forwarded to the physical connection
+     * except for close and isClosed, which only concern the lease, and prepareStatement with only an SQL
+     * argument, which goes through the statement cache. Statements are tracked by the leak detector, if any.
+     */
+    private class PooledConnection implements InvocationHandler
+    {
+        private final PhysicalConnection physical;
+        private Connection proxy;
+        private boolean closed = false;
+
+        PooledConnection(PhysicalConnection physical)
+        {
+            this.physical = physical;
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(physical.connection))
+                        return physical.connection;
+                    break;
+                default:
+                    break;
+            }
+            if (closed)
+                throw new SQLException("Connectie werd al teruggegeven aan de pool");
+            Object result;
+            if (method.getName().equals("prepareStatement") && args.length == 1)
+                result = physical.statements.prepare((String) args[0], this.proxy);
+            else {
+                try {
+                    result = method.invoke(physical.connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            if (leaks != null && result instanceof Statement)
+                return leaks.track((Statement) result, method.getReturnType());
+            return result;
+        }
+    }
+}
@@ -14,20 +14,63 @@ public class DBProp
     private static String driver;
     private static String login;
     private static String paswoord;
+    private static Properties properties;
 
     private DBProp()
     {
         Properties appProperties = new Properties();
-        try (FileInputStream in = new FileInputStream("DB.properties")) {
+        // The file can be swapped with -DdbProperties=<file>, e.g. to run the benchmarks against another database.
+        try (FileInputStream in = new FileInputStream(System.getProperty("dbProperties", "DB.properties"))) {
             appProperties.load(in);
 
-            dbUrl = appProperties.getProperty("dbUrl");
+            dbUrl = withStatementDefaults(appProperties.getProperty("dbUrl"));
             driver = appProperties.getProperty("driver");
             login = appProperties.getProperty("login");
             paswoord = appProperties.getProperty("paswoord");
+            properties = appProperties;
 
         } catch (java.io.IOException ex) {
             System.out.println("Properties file niet gevonden");
+            properties = new Properties();
+        }
+    }
+
+    /**
+     * Adds the settings the statement cache of the pool relies on to a MySQL Connector/J url, unless the url
+     * sets them itself. Without useServerPrepStmts=true the driver only emulates prepared statements on the
+     * client, so keeping them prepared saves nothing on the server. cachePrepStmts=true additionally lets
+     * the driver reuse the statements the pool does not cache, e.g. a second one for the same SQL.
+     * @param url   The url from the properties file.
+     * @return the url with the defaults added
+     */
+    private static String withStatementDefaults(String url)
+    {
+        if (url == null || !url.startsWith("jdbc:mysql:"))
+            return url;
+        StringBuilder tbr = new StringBuilder(url);
+        for (String x : new String[]{"useServerPrepStmts=true", "cachePrepStmts=true"}) {
+            if (!url.contains(x.substring(0, x.indexOf('=') + 1)))
+                tbr.append(tbr.indexOf("?") < 0 ? '?' : '&').append(x);
+        }
+        return tbr.toString();
+    }
+
+    /**
+     * Reads an optional numeric setting from the properties file.
+     * @param key           The name of the property.
+     * @param defaultValue  The value to use when the property is absent or malformed.
+     * @return the value of the property
+     */
+    private static long getNumber(String key, long defaultValue)
+    {
+        if (properties == null) {
+            DBProp db = new DBProp();
+        }
+        try {
+            return Long.parseLong(properties.getProperty(key, Long.toString(defaultValue)).trim());
+        } catch (NumberFormatException ex) {
+            System.out.println("Ongeldige waarde voor " + key + ", standaardwaarde wordt gebruikt");
+            return defaultValue;
         }
     }
     
@@ -74,4 +117,113 @@ public class DBProp
         }
         return paswoord;
     }
+
+    /**
+     * @return the minimum number of connections kept open by the pool
+     */
+    public static int getPoolMinimum()
+    {
+        return (int) getNumber("pool.min", 1);
+    }
+
+    /**
+     * @return the maximum number of connections the pool hands out at once
+     */
+    public static int getPoolMaximum()
+    {
+        return (int) getNumber("pool.max", 10);
+    }
+
+    /**
+     * @return the time in milliseconds an unused connection may stay idle before it is closed
+     */
+    public static long getPoolIdleTimeout()
+    {
+        return getNumber("pool.idleTimeout", 300000);
+    }
+
+    /**
+     * @return the time in milliseconds a caller waits for a free connection
+     */
+    public static long getPoolBorrowTimeout()
+    {
+        return getNumber("pool.borrowTimeout", 10000);
+    }
+
+    /**
+     * @return the time in seconds a connection gets to answer the validation check
+     */
+    public static int getPoolValidationTimeout()
+    {
+        return (int) getNumber("pool.validationTimeout", 2);
+    }
+
+    /**
+     * @return the path of the precomputed schema snapshot, or null when the schema is inspected at runtime
+     */
+    public static String getSchemaSnapshot()
+    {
+        if (properties == null) {
+            DBProp db = new DBProp();
+        }
+        return properties.getProperty("schemaSnapshot");
+    }
+
+    /**
+     * The number of rows a streamed query fetches at once. With MySQL Connector/J a positive fetch size only
+     * fetches in portions when useCursorFetch=true is part of the dbUrl, otherwise the whole result is read
+     * at once. Integer.MIN_VALUE makes the driver hand over the rows one by one instead, but then no other
+     * query can run on the connection until the stream is closed.
+     * @return the fetch size used by stream when none is given
+     */
+    public static int getQueryFetchSize()
+    {
+        return (int) getNumber("query.fetchSize", 1000);
+    }
+
+    /**
+     * @return whether RitDB keeps an in-memory index of the open rides
+     */
+    public static boolean isOpenRittenIndex()
+    {
+        if (properties == null) {
+            DBProp db = new DBProp();
+        }
+        return Boolean.parseBoolean(properties.getProperty("index.openRitten", "false").trim());
+    }
+
+    /**
+     * @param table the table to cache
+     * @return the number of rows of the table kept in the second level cache, zero when it is disabled
+     */
+    public static int getCacheSize(String table)
+    {
+        return (int) getNumber("cache." + table + ".size", 0);
+    }
+
+    /**
+     * @param table the table to cache
+     * @return the time in milliseconds a row of the table is kept in the second level cache
+     */
+    public static long getCacheTimeToLive(String table)
+    {
+        return getNumber("cache." + table + ".ttl", 300000);
+    }
+
+    /**
+     * @return the number of prepared statements kept per pooled connection
+     */
+    public static int getStatementCacheSize()
+    {
+        return (int) getNumber("pool.statementCacheSize", 50);
+    }
+
+    /**
+     * @return the time in milliseconds a statement or result set may stay open before it is reported as leaked, zero when
+     * leak detection is disabled
+     */
+    public static long getPoolLeakDetectionThreshold()
+    {
+        return getNumber("pool.leakDetectionThreshold", 0);
+    }
 }
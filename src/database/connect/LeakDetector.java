@@ -0,0 +1,181 @@
+package database.connect;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the statements handed out by the pool and the result sets they produce, and reports the
+ * ones that stay open for longer than a threshold on the standard error stream, together with the stack trace
+ * of the place they were created. <br />
+ * Every tracked statement and result set is wrapped so that closing it ends the tracking. Closing a statement
+ * or executing it again also ends the tracking of its result set, as JDBC closes that one implicitly. A leak is
+ * reported once; it is reported again as closed when it is closed after all. Tracking costs a stack trace per
+ * statement or result set, so the detector is only created when a threshold is configured.
+ */
+class LeakDetector
+{
+    // The time in milliseconds a statement or result set may stay open before it is reported.
+    private final long threshold;
+    // The open statements and result sets by their wrapper.
+    private final ConcurrentHashMap<Object, Lease> open = new ConcurrentHashMap<>();
+
+    /**
+     * The moment a statement or result set was created and the place it was created at.
+     */
+    private static class Lease
+    {
+        final String kind;
+        final long since = System.currentTimeMillis();
+        final Throwable site;
+        volatile boolean reported = false;
+        // The last result set of a statement and its wrapper, null if there is none.
+        volatile ResultSet physicalResults;
+        volatile Object results;
+
+        Lease(String kind)
+        {
+            this.kind = kind;
+            site = new Throwable(kind + " aangemaakt in thread " + Thread.currentThread().getName());
+        }
+    }
+
+    /**
+     * @param threshold The time in milliseconds a statement or result set may stay open before it is reported.
+     */
+    LeakDetector(long threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    long getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Starts tracking a statement, and every result set it produces.
+     * @param statement The statement, as handed out by the connection.
+     * @param type      The interface the wrapper has to implement, Statement or one of its subinterfaces.
+     * @return  The wrapper to hand out instead of the statement.
+     */
+    Statement track(Statement statement, Class<?> type)
+    {
+        Lease lease = new Lease("Statement");
+        Statement[] wrapper = new Statement[1];
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    end(wrapper[0]);
+                    end(lease.results);
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result;
+            try {
+                result = method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (method.getName().startsWith("execute"))
+                end(lease.results);
+            if (!(result instanceof ResultSet))
+                return result;
+            // Generated keys are a result set of their own, the others are the current result of the statement.
+            if (method.getName().equals("getGeneratedKeys"))
+                return track((ResultSet) result, wrapper[0]);
+            if (result != lease.physicalResults || !open.containsKey(lease.results)) {
+                lease.physicalResults = (ResultSet) result;
+                lease.results = track((ResultSet) result, wrapper[0]);
+            }
+            return lease.results;
+        };
+        wrapper[0] = (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+        open.put(wrapper[0], lease);
+        return wrapper[0];
+    }
+
+    /**
+     * Starts tracking a result set.
+     * @param results   The result set, as produced by the statement.
+     * @param statement The wrapper of the statement, returned by getStatement.
+     * @return  The wrapper to hand out instead of the result set.
+     */
+    private ResultSet track(ResultSet results, Statement statement)
+    {
+        Lease lease = new Lease("ResultSet");
+        ResultSet[] wrapper = new ResultSet[1];
+        InvocationHandler handler = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    end(wrapper[0]);
+                    break;
+                case "getStatement":
+                    return statement;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(results, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        wrapper[0] = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, handler);
+        open.put(wrapper[0], lease);
+        return wrapper[0];
+    }
+
+    /**
+     * Ends the tracking of a statement or result set, reporting it as closed if it was reported as a leak.
+     * @param wrapper   The wrapper, null for none.
+     */
+    private void end(Object wrapper)
+    {
+        Lease closed = wrapper == null ? null : open.remove(wrapper);
+        if (closed != null && closed.reported)
+            System.err.println(closed.kind + " werd alsnog gesloten na "
+                    + (System.currentTimeMillis() - closed.since) + " ms");
+    }
+
+    /**
+     * Reports every statement and result set that has been open for longer than the threshold and was not
+     * reported yet.
+     */
+    void check()
+    {
+        long deadline = System.currentTimeMillis() - threshold;
+        for (Map.Entry<Object, Lease> x : open.entrySet()) {
+            Lease lease = x.getValue();
+            if (lease.reported || lease.since > deadline)
+                continue;
+            lease.reported = true;
+            System.err.println(lease.kind + " niet gesloten na " + (System.currentTimeMillis() - lease.since) + " ms:");
+            lease.site.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the number of statements and result sets that are open.
+     * @return  The number of tracked statements and result sets.
+     */
+    int size()
+    {
+        return open.size();
+    }
+}
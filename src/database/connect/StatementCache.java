@@ -0,0 +1,213 @@
+package database.connect;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of prepared statements belonging to one physical connection.
+ * Statements handed out by the cache are wrappers: closing them clears their parameters, resets their fetch
+ * size, maximum number of rows and query timeout and makes them available for the next query with the same
+ * SQL instead of deallocating them on the server. <br />
+ * A statement that is still in use is never handed out twice; a second request for the same SQL during
+ * that time gets an ordinary, uncached statement. <br />
+ * MySQL Connector/J only prepares statements on the server with useServerPrepStmts=true, otherwise caching
+ * them only saves parsing on the client. DBProp adds useServerPrepStmts=true and cachePrepStmts=true to a
+ * MySQL dbUrl that does not set them itself.
+ */
+class StatementCache
+{
+    // The physical connection the statements are prepared on.
+    private final Connection connection;
+    // The maximum number of statements kept prepared.
+    private final int capacity;
+    // The cached statements by their SQL, least recently used first.
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    /**
+     * Constructs a new cache for the given physical connection.
+     * @param connection    The physical connection to prepare statements on.
+     * @param capacity      The maximum number of statements kept prepared. Zero disables caching.
+     */
+    StatementCache(Connection connection, int capacity)
+    {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest)
+            {
+                if (size() <= StatementCache.this.capacity)
+                    return false;
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL, reusing a cached one when it is free.
+     * @param sql       The SQL of the statement.
+     * @param owner     The connection the statement should report as its connection.
+     * @return  The prepared statement.
+     * @throws SQLException Thrown by the connection when preparing the statement.
+     */
+    synchronized PreparedStatement prepare(String sql, Connection owner) throws SQLException
+    {
+        if (capacity <= 0)
+            return connection.prepareStatement(sql);
+
+        CachedStatement cached = statements.get(sql);
+        if (cached == null) {
+            cached = new CachedStatement(connection.prepareStatement(sql), owner);
+            statements.put(sql, cached);
+        }
+        else if (cached.inUse)
+            return connection.prepareStatement(sql);
+
+        cached.lease(owner);
+        return cached.proxy;
+    }
+
+    /**
+     * Returns the number of statements currently kept prepared.
+     * @return  The size of the cache.
+     */
+    synchronized int size()
+    {
+        return statements.size();
+    }
+
+    /**
+     * Closes all cached statements.
+     */
+    synchronized void clear()
+    {
+        for (CachedStatement x : statements.values())
+            x.evict();
+        statements.clear();
+    }
+
+    /**
+     * A prepared statement kept in the cache together with the wrapper handed out to callers. <br />
+     * The statement is closed by its user while another thread may evict it from the cache, so its state is
+     * only changed while holding the monitor of the cache.
+     */
+    private class CachedStatement implements InvocationHandler
+    {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        // Guarded by the monitor of the cache.
+        private Connection owner;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement, Connection owner)
+        {
+            this.statement = statement;
+            this.owner = owner;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        void lease(Connection owner)
+        {
+            this.owner = owner;
+            this.inUse = true;
+        }
+
+        /**
+         * Really closes the statement, now or as soon as its current user is done with it.
+         */
+        void evict()
+        {
+            evicted = true;
+            if (!inUse)
+                closeQuietly();
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "close":
+                    release();
+                    return null;
+                case "isClosed":
+                    return !isInUse() || statement.isClosed();
+                case "getConnection":
+                    synchronized (StatementCache.this) {
+                        return owner;
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (!isInUse())
+                throw new SQLException("Statement werd al gesloten");
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private boolean isInUse()
+        {
+            synchronized (StatementCache.this) {
+                return inUse;
+            }
+        }
+
+        /**
+         * Gives the statement back to the cache, or really closes it when it was evicted while in use. The
+         * statement is reset before it is marked free, so nobody can lease it halfway through.
+         */
+        private void release() throws SQLException
+        {
+            synchronized (StatementCache.this) {
+                if (!inUse)
+                    return;
+                try {
+                    if (evicted)
+                        closeQuietly();
+                    else
+                        recycle();
+                } finally {
+                    inUse = false;
+                }
+            }
+        }
+
+        private void recycle() throws SQLException
+        {
+            ResultSet results = statement.getResultSet();
+            if (results != null)
+                results.close();
+            statement.clearParameters();
+            // Settings changed by the previous user would otherwise silently apply to the next one.
+            statement.setFetchSize(0);
+            statement.setMaxRows(0);
+            statement.setQueryTimeout(0);
+        }
+
+        private void closeQuietly()
+        {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
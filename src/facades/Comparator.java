@@ -1,25 +1,210 @@
 package facades;
 
-
+
 ;
 
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A condition on the rows of a query. Simple comparisons of a column with a value can be combined into a tree
+ * with AND, OR and NOT, so that every condition is evaluated by the database instead of by filtering in
+ * Java afterwards:
+ * <pre>
+ * Comparator.EQ("fietsRegistratienummer", "12")
+ *         .and(Comparator.ISNULL("eindtijd"))
+ *         .and(Comparator.BETWEEN("starttijd", van, tot))
+ * </pre>
+ * Values are never inlined in the SQL, every value is bound to a placeholder. String values are bound as
+ * strings, other values, e.g. numbers, with their own type.
+ */
 public class Comparator
 {
+    // The operator, e.g. "=", "IN" or "AND".
     private String val;
+    // The column, null for AND, OR and NOT.
     private String lval;
-    private String rval;
+    // The values compared with, in the order of their placeholders.
+    private Object[] rvals;
+    // The conditions combined by AND, OR and NOT.
+    private Comparator[] operands;
+
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final Comparator[] NO_OPERANDS = new Comparator[0];
 
-    private Comparator(String lval, String val, String rval)
+    private Comparator(String lval, String val, Object... rvals)
     {
         this.lval = lval;
         this.val = val;
-        this.rval = rval;
+        this.rvals = rvals;
+        this.operands = NO_OPERANDS;
     }
 
-    
+    private Comparator(String val, Comparator... operands)
+    {
+        this.val = val;
+        this.rvals = NO_VALUES;
+        this.operands = operands;
+    }
+
+
     public String toString()
     {
-        return lval + ' ' + val + " '" + rval + '\'';
+        if (isComposite())
+        {
+            StringBuilder tbr = new StringBuilder();
+            append(tbr, true);
+            return tbr.toString();
+        }
+        return lval + ' ' + val + (rvals.length == 1 ? " '" + rvals[0] + '\'' : " " + Arrays.toString(rvals));
+    }
+
+    /**
+     * Returns the condition in SQL format with placeholders instead of the values.
+     * @return  The sql string.
+     */
+    String toSql()
+    {
+        StringBuilder sql = new StringBuilder();
+        appendSql(sql);
+        return sql.toString();
+    }
+
+    /**
+     * Appends the condition in SQL format with placeholders instead of the values.
+     * @param sql   The SQL to append to.
+     */
+    void appendSql(StringBuilder sql)
+    {
+        append(sql, false);
+    }
+
+    private void append(StringBuilder sql, boolean inline)
+    {
+        switch (val)
+        {
+            case "AND":
+            case "OR":
+                if (operands.length == 0)
+                    sql.append(val.equals("AND") ? "1 = 1" : "1 = 0");
+                for (int i = 0; i < operands.length; ++i)
+                {
+                    if (i != 0)
+                        sql.append(' ').append(val).append(' ');
+                    operands[i].appendOperand(sql, inline);
+                }
+                break;
+            case "NOT":
+                sql.append("NOT ");
+                operands[0].appendOperand(sql, inline);
+                break;
+            case "IS NULL":
+                sql.append(lval).append(" IS NULL");
+                break;
+            case "IN":
+                if (rvals.length == 0) {
+                    sql.append("1 = 0"); //nothing is in an empty list, which SQL cannot express directly
+                    break;
+                }
+                sql.append(lval).append(" IN (");
+                for (int i = 0; i < rvals.length; ++i)
+                    appendValue(sql.append(i == 0 ? "" : ", "), i, inline);
+                sql.append(')');
+                break;
+            case "BETWEEN":
+                appendValue(sql.append(lval).append(" BETWEEN "), 0, inline);
+                appendValue(sql.append(" AND "), 1, inline);
+                break;
+            default:
+                appendValue(sql.append(lval).append(' ').append(val).append(' '), 0, inline);
+        }
+    }
+
+    /**
+     * Appends this condition as an operand of AND, OR or NOT, in parentheses when it is composite itself.
+     */
+    private void appendOperand(StringBuilder sql, boolean inline)
+    {
+        if (isComposite())
+        {
+            sql.append('(');
+            append(sql, inline);
+            sql.append(')');
+        }
+        else
+            append(sql, inline);
+    }
+
+    private void appendValue(StringBuilder sql, int index, boolean inline)
+    {
+        if (inline)
+            sql.append('\'').append(rvals[index]).append('\'');
+        else
+            sql.append('?');
+    }
+
+    private boolean isComposite()
+    {
+        return lval == null;
+    }
+
+    /**
+     * Adds the values to bind to the placeholders of this condition, in order.
+     * @param parameters    The list to add the values to.
+     */
+    void collectValues(List<Object> parameters)
+    {
+        for (Object x : rvals)
+            parameters.add(x);
+        for (Comparator x : operands)
+            x.collectValues(parameters);
+    }
+
+    /**
+     * Adds everything that determines the SQL of this condition, but not its values, to the shape of a query.
+     * @param shape The shape of the query.
+     */
+    void describe(QueryShape shape)
+    {
+        shape.add(lval);
+        shape.add(val);
+        shape.add(rvals.length);
+        shape.add(operands.length);
+        for (Comparator x : operands)
+            x.describe(shape);
+    }
+
+    /**
+     * Combines this condition with another one, both have to hold.
+     * @param other The other condition.
+     * @return  The combined condition.
+     */
+    public Comparator and(Comparator other)
+    {
+        return combine("AND", other);
+    }
+
+    /**
+     * Combines this condition with another one, at least one has to hold.
+     * @param other The other condition.
+     * @return  The combined condition.
+     */
+    public Comparator or(Comparator other)
+    {
+        return combine("OR", other);
+    }
+
+    /**
+     * Combines this condition with another one, extending this condition instead of nesting it when it
+     * already uses the same operator.
+     */
+    private Comparator combine(String operator, Comparator other)
+    {
+        if (!val.equals(operator))
+            return new Comparator(operator, this, other);
+        Comparator[] combined = Arrays.copyOf(operands, operands.length + 1);
+        combined[operands.length] = other;
+        return new Comparator(operator, combined);
     }
 
     public static Comparator EQ(String lval,  String rval)
@@ -47,11 +232,130 @@ public class Comparator
         return new Comparator(lval, "<=", rval);
     }
 
+    /**
+     * The column equals the given value, bound with its own type instead of as a string, so e.g. numeric keys
+     * are compared as numbers.
+     * @param lval  The column.
+     * @param rval  The value.
+     * @return  The condition.
+     */
+    public static Comparator EQ(String lval, Object rval)
+    {
+        return new Comparator(lval, "=", rval);
+    }
+
+    /**
+     * The column is greater than the given value, bound with its own type.
+     * @see #EQ(String, Object)
+     */
+    public static Comparator GT(String lval, Object rval)
+    {
+        return new Comparator(lval, ">", rval);
+    }
+
+    /**
+     * The column is less than the given value, bound with its own type.
+     * @see #EQ(String, Object)
+     */
+    public static Comparator LT(String lval, Object rval)
+    {
+        return new Comparator(lval, "<", rval);
+    }
+
+    /**
+     * The column is greater than or equal to the given value, bound with its own type.
+     * @see #EQ(String, Object)
+     */
+    public static Comparator GET(String lval, Object rval)
+    {
+        return new Comparator(lval, ">=", rval);
+    }
+
+    /**
+     * The column is less than or equal to the given value, bound with its own type.
+     * @see #EQ(String, Object)
+     */
+    public static Comparator LET(String lval, Object rval)
+    {
+        return new Comparator(lval, "<=", rval);
+    }
+
     public static Comparator LIKE(String lval, String rval)
     {
         return new Comparator(lval, "LIKE", rval);
     }
 
+    /**
+     * The column equals one of the given values. An empty list of values matches nothing.
+     * @param lval  The column.
+     * @param rvals The values.
+     * @return  The condition.
+     */
+    public static Comparator IN(String lval, String... rvals)
+    {
+        return new Comparator(lval, "IN", (Object[]) rvals.clone());
+    }
+
+    /**
+     * The column equals one of the given values, each bound with its own type.
+     * @see #IN(String, String...)
+     */
+    public static Comparator IN(String lval, Object... rvals)
+    {
+        return new Comparator(lval, "IN", rvals.clone());
+    }
+
+    /**
+     * The column lies between the given values, both included.
+     * @param lval  The column.
+     * @param low   The lowest value.
+     * @param high  The highest value.
+     * @return  The condition.
+     */
+    public static Comparator BETWEEN(String lval, String low, String high)
+    {
+        return new Comparator(lval, "BETWEEN", low, high);
+    }
+
+    /**
+     * The column lies between the given values, both included and bound with their own type.
+     * @see #BETWEEN(String, String, String)
+     */
+    public static Comparator BETWEEN(String lval, Object low, Object high)
+    {
+        return new Comparator(lval, "BETWEEN", low, high);
+    }
+
+    public static Comparator ISNULL(String lval)
+    {
+        return new Comparator(lval, "IS NULL");
+    }
+
+    /**
+     * All given conditions have to hold.
+     * @param operands  The conditions.
+     * @return  The combined condition.
+     */
+    public static Comparator AND(Comparator... operands)
+    {
+        return new Comparator("AND", operands.clone());
+    }
+
+    /**
+     * At least one of the given conditions has to hold.
+     * @param operands  The conditions.
+     * @return  The combined condition.
+     */
+    public static Comparator OR(Comparator... operands)
+    {
+        return new Comparator("OR", operands.clone());
+    }
+
+    public static Comparator NOT(Comparator operand)
+    {
+        return new Comparator("NOT", operand);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -60,16 +364,18 @@ public class Comparator
         Comparator that = (Comparator) o;
 
         return val.equals(that.val) &&
-                lval.equals(that.lval) &&
-                rval.equals(that.rval);
+                (lval != null ? lval.equals(that.lval) : that.lval == null) &&
+                Arrays.equals(rvals, that.rvals) &&
+                Arrays.equals(operands, that.operands);
     }
 
     @Override
     public int hashCode()
     {
         int result = val.hashCode();
-        result = 31 * result + lval.hashCode();
-        result = 31 * result + rval.hashCode();
+        result = 31 * result + (lval != null ? lval.hashCode() : 0);
+        result = 31 * result + Arrays.hashCode(rvals);
+        result = 31 * result + Arrays.hashCode(operands);
         return result;
     }
 }
@@ -1,8 +1,16 @@
 package facades;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+
 /**
- * A class representing a more 'lightweight' concept such as a struct or tuple in order to keep track of all
- * inspections between a model and the connection.
+ * The values of all fields of one model, stored by column instead of as a map of boxed values. <br />
+ * Integer, Float and Double fields live unboxed in a long slot and whether a field is NULL is kept in a
+ * bitmap, so hydrating a row of such columns allocates nothing. Only fields of other types take an object
+ * slot. The position and slot of every field is determined by the FieldLayout of the model class. <br />
+ * Next to the current values, the values as they were last loaded from or written to the persistent storage
+ * are kept, in order to tell which fields were modified. They are only copied when a clean store is
+ * modified, so a row that is only read costs the current values alone.
  * There is no available compile time type checking as far as I know of so rudimentary generic type checking
  * needs to be done here.
  */
@@ -13,41 +21,332 @@ class FieldData
     // Enums cannot successfully be deduces from there, a possible way out is to let
     // users overwrite the variables in a class, but that would require INTENSIVE
     // reflection
-    
-    private Class<?> runtimeType;
-    
-    private Object runtimeValue = null;
 
-    FieldData( Class<?> type)
+    private final FieldLayout layout;
+
+    // The primitive values, floats and doubles by their bits.
+    private final long[] primitives;
+    // The values of the fields of a reference type.
+    private final Object[] objects;
+    // One bit per position, set when the field is NULL.
+    private final long[] nulls;
+
+    // The values as they were last loaded from or written to the persistent storage, null while they are
+    // the same as the current values.
+    private long[] originalPrimitives;
+    private Object[] originalObjects;
+    private long[] originalNulls;
+
+    /**
+     * Constructs a store for the given layout with every field NULL.
+     * @param layout    The layout of the model class.
+     */
+    FieldData(FieldLayout layout)
+    {
+        this.layout = layout;
+        primitives = new long[layout.getPrimitiveCount()];
+        objects = new Object[layout.getObjectCount()];
+        nulls = new long[(layout.size() + 63) >>> 6];
+        Arrays.fill(nulls, -1L);
+    }
+
+    FieldLayout getLayout()
+    {
+        return layout;
+    }
+
+    /**
+     * Returns the value of a field, boxed.
+     * @param position  The position of the field.
+     * @return  The value or null if the field is NULL.
+     */
+    Object get(int position)
+    {
+        return read(position, primitives, objects, nulls);
+    }
+
+    /**
+     * Returns the value of a field as it was last loaded from or written to the persistent storage.
+     * @param position  The position of the field.
+     * @return  The original value or null if the field was NULL.
+     */
+    Object getOriginal(int position)
+    {
+        if (originalNulls == null)
+            return get(position);
+        return read(position, originalPrimitives, originalObjects, originalNulls);
+    }
+
+    private Object read(int position, long[] primitives, Object[] objects, long[] nulls)
     {
-        runtimeType = type;
+        if (isSet(nulls, position))
+            return null;
+        int slot = layout.getSlot(position);
+        switch (layout.getKind(position))
+        {
+            case INT:
+                return (int) primitives[slot];
+            case FLOAT:
+                return Float.intBitsToFloat((int) primitives[slot]);
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[slot]);
+            default:
+                return objects[slot];
+        }
     }
 
-    void setRunTimeValue( Object object)
+    /**
+     * Returns the value of an Integer field without boxing it.
+     * @param position  The position of the field.
+     * @return  The value.
+     * @throws ClassCastException   Thrown when the field is not an Integer.
+     * @throws NullPointerException Thrown when the field is NULL.
+     */
+    int getInt(int position)
     {
-        if (object != null && object.equals("NULL"))
-            runtimeValue = null;
-        else if (runtimeType.isInstance(object) || object == null)
-            runtimeValue = object;
+        if (layout.getKind(position) != FieldLayout.Kind.INT)
+            throw new ClassCastException();
+        if (isSet(nulls, position))
+            throw new NullPointerException("Field " + layout.getName(position) + " is NULL.");
+        return (int) primitives[layout.getSlot(position)];
+    }
+
+    boolean isNull(int position)
+    {
+        return isSet(nulls, position);
+    }
+
+    /**
+     * Sets a field to the given value after checking it against the runtime type of the field.
+     * For backwards compatibility the string "NULL" still sets a field of any type to NULL.
+     * @param position  The position of the field.
+     * @param object    The value, null for NULL.
+     */
+    void set(int position, Object object)
+    {
+        snapshot();
+        if (object == null || "NULL".equals(object))
+        {
+            loadNull(position);
+            return;
+        }
+        switch (layout.getKind(position))
+        {
+            case INT:
+                if (object instanceof Integer)
+                    loadInt(position, (Integer) object);
+                else
+                    throw new ClassCastException();
+                break;
+            case FLOAT:
+                if (object instanceof Float)
+                    loadFloat(position, (Float) object);
+                else
+                    throw new ClassCastException();
+                break;
+            case DOUBLE:
+                if (object instanceof Double)
+                    loadDouble(position, (Double) object);
+                else
+                    throw new ClassCastException();
+                break;
+            default:
+                if (layout.getType(position).isInstance(object))
+                    loadObject(position, object);
+                else
+                    throw new ClassCastException();
+        }
+    }
+
+    /**
+     * Sets a field to a value of a possibly different type, converting it to the runtime type of the field
+     * where possible, e.g. a Long or BigInteger key generated by the driver for an Integer field.
+     * @param position  The position of the field.
+     * @param object    The value, null for NULL.
+     */
+    void setConverted(int position, Object object)
+    {
+        snapshot();
+        if (object instanceof Number)
+        {
+            Number number = (Number) object;
+            switch (layout.getKind(position))
+            {
+                case INT:
+                    loadInt(position, number.intValue());
+                    return;
+                case FLOAT:
+                    loadFloat(position, number.floatValue());
+                    return;
+                case DOUBLE:
+                    loadDouble(position, number.doubleValue());
+                    return;
+                default:
+                    if (layout.getType(position) == BigDecimal.class)
+                    {
+                        loadObject(position, new BigDecimal(number.toString()));
+                        return;
+                    }
+            }
+        }
+        if (object != null && !"NULL".equals(object) && layout.getType(position) == String.class)
+            loadObject(position, object.toString());
         else
+            set(position, object);
+    }
+
+    /**
+     * Sets an Integer field without boxing the value.
+     * @param position  The position of the field.
+     * @param value     The value.
+     * @throws ClassCastException   Thrown when the field is not an Integer.
+     */
+    void setInt(int position, int value)
+    {
+        if (layout.getKind(position) != FieldLayout.Kind.INT)
             throw new ClassCastException();
+        snapshot();
+        loadInt(position, value);
+    }
+
+    /**
+     * Keeps the current values as the original values before a clean store is modified.
+     */
+    private void snapshot()
+    {
+        if (originalNulls != null)
+            return;
+        originalPrimitives = primitives.clone();
+        originalObjects = objects.clone();
+        originalNulls = nulls.clone();
     }
 
-     Object getRunTimeValue()
+    // The load methods write the current value without checking it or keeping the original values, for
+    // values read by the HydrationPlan, which are of the runtime type by construction and marked clean
+    // afterwards.
+
+    void loadNull(int position)
     {
-        return runtimeValue;
+        nulls[position >>> 6] |= 1L << position;
+        if (layout.getKind(position) == FieldLayout.Kind.OBJECT)
+            objects[layout.getSlot(position)] = null;
+        else
+            primitives[layout.getSlot(position)] = 0;
     }
 
-     Class<?> getRuntimeType()
+    void loadInt(int position, int value)
     {
-        return runtimeType;
+        primitives[layout.getSlot(position)] = value;
+        nulls[position >>> 6] &= ~(1L << position);
     }
 
-    @Override
-    
-    public FieldData clone()
+    void loadFloat(int position, float value)
+    {
+        primitives[layout.getSlot(position)] = Float.floatToIntBits(value);
+        nulls[position >>> 6] &= ~(1L << position);
+    }
+
+    void loadDouble(int position, double value)
+    {
+        primitives[layout.getSlot(position)] = Double.doubleToLongBits(value);
+        nulls[position >>> 6] &= ~(1L << position);
+    }
+
+    void loadObject(int position, Object value)
+    {
+        if (value == null)
+        {
+            loadNull(position);
+            return;
+        }
+        objects[layout.getSlot(position)] = value;
+        nulls[position >>> 6] &= ~(1L << position);
+    }
+
+    /**
+     * Returns whether the value of a field differs from the value last loaded from or written to the
+     * persistent storage. Setting a field to the value it already had, or back to its original value, is
+     * not a modification.
+     * @param position  The position of the field.
+     * @return  True if the value was modified.
+     */
+    boolean isDirty(int position)
+    {
+        if (originalNulls == null)
+            return false;
+        boolean isNull = isSet(nulls, position);
+        if (isNull != isSet(originalNulls, position))
+            return true;
+        if (isNull)
+            return false;
+        int slot = layout.getSlot(position);
+        if (layout.getKind(position) == FieldLayout.Kind.OBJECT)
+            return !objects[slot].equals(originalObjects[slot]);
+        return primitives[slot] != originalPrimitives[slot];
+    }
+
+    /**
+     * Marks the current values as being in sync with the persistent storage.
+     */
+    void markClean()
+    {
+        originalPrimitives = null;
+        originalObjects = null;
+        originalNulls = null;
+    }
+
+    /**
+     * Sets every field to NULL and marks the fields as clean.
+     */
+    void clear()
+    {
+        Arrays.fill(primitives, 0);
+        Arrays.fill(objects, null);
+        Arrays.fill(nulls, -1L);
+        markClean();
+    }
+
+    /**
+     * Returns whether every field is NULL.
+     * @return  True if the model holds no values.
+     */
+    boolean isEmpty()
+    {
+        for (int i = 0; i < layout.size(); ++i)
+        {
+            if (!isSet(nulls, i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a clean copy of the current values.
+     * @return  The copy.
+     */
+    FieldData copy()
+    {
+        FieldData copy = new FieldData(layout);
+        copy.loadFrom(this);
+        return copy;
+    }
+
+    /**
+     * Overwrites the values with the current values of the given store, of the same layout, and marks them
+     * as clean.
+     * @param other The store to copy from.
+     */
+    void loadFrom(FieldData other)
+    {
+        System.arraycopy(other.primitives, 0, primitives, 0, primitives.length);
+        System.arraycopy(other.objects, 0, objects, 0, objects.length);
+        System.arraycopy(other.nulls, 0, nulls, 0, nulls.length);
+        markClean();
+    }
+
+    private static boolean isSet(long[] bits, int position)
     {
-        return new FieldData(runtimeType);
+        return (bits[position >>> 6] & 1L << position) != 0;
     }
 
     @Override
@@ -57,16 +356,18 @@ class FieldData
 
         FieldData fieldData = (FieldData) o;
 
-        return getRuntimeType().equals(fieldData.getRuntimeType()) &&
-                (runtimeValue != null ? runtimeValue.equals(fieldData.runtimeValue) :
-                        fieldData.runtimeValue == null);
+        return layout == fieldData.layout &&
+                Arrays.equals(primitives, fieldData.primitives) &&
+                Arrays.equals(objects, fieldData.objects) &&
+                Arrays.equals(nulls, fieldData.nulls);
     }
 
     @Override
     public int hashCode()
     {
-        int result = getRuntimeType().hashCode();
-        result = 31 * result + (runtimeValue != null ? runtimeValue.hashCode() : 0);
+        int result = Arrays.hashCode(primitives);
+        result = 31 * result + Arrays.hashCode(objects);
+        result = 31 * result + Arrays.hashCode(nulls);
         return result;
     }
 }
@@ -0,0 +1,138 @@
+package facades;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of the fields of a Model class, shared by all models of that class. <br />
+ * Every field gets a fixed position. Integer, Float and Double fields are stored unboxed in a primitive
+ * slot of FieldData, all other fields in an object slot; the layout keeps track of which slot belongs
+ * to which position.
+ */
+final class FieldLayout
+{
+    /**
+     * The way the value of a field is stored.
+     */
+    enum Kind
+    {
+        // An Integer, stored as an int in a primitive slot.
+        INT,
+        // A Float, stored as its bits in a primitive slot.
+        FLOAT,
+        // A Double, stored as its bits in a primitive slot.
+        DOUBLE,
+        // Any other type, stored as a reference in an object slot.
+        OBJECT
+    }
+
+    // The names of the fields by position.
+    private final String[] names;
+    // The runtime types of the fields by position.
+    private final Class<?>[] types;
+    // The kinds of the fields by position.
+    private final Kind[] kinds;
+    // The index of the primitive or object slot of every position.
+    private final int[] slots;
+    // The position of every field by its name.
+    private final HashMap<String, Integer> positions = new HashMap<>();
+    private final int primitiveCount;
+    private final int objectCount;
+
+    /**
+     * Lays out the given fields in the iteration order of the map.
+     * @param fields    The names of the fields and their runtime types.
+     */
+    FieldLayout(Map<String, Class<?>> fields)
+    {
+        names = new String[fields.size()];
+        types = new Class<?>[fields.size()];
+        kinds = new Kind[fields.size()];
+        slots = new int[fields.size()];
+        int position = 0, primitives = 0, objects = 0;
+        for (Map.Entry<String, Class<?>> x : fields.entrySet())
+        {
+            names[position] = x.getKey();
+            types[position] = x.getValue();
+            kinds[position] = kindOf(x.getValue());
+            slots[position] = kinds[position] == Kind.OBJECT ? objects++ : primitives++;
+            positions.put(x.getKey(), position);
+            ++position;
+        }
+        primitiveCount = primitives;
+        objectCount = objects;
+    }
+
+    private static Kind kindOf(Class<?> type)
+    {
+        if (type == Integer.class)
+            return Kind.INT;
+        if (type == Float.class)
+            return Kind.FLOAT;
+        if (type == Double.class)
+            return Kind.DOUBLE;
+        return Kind.OBJECT;
+    }
+
+    /**
+     * Lays out a subset of the fields of this layout, e.g. the columns selected by a projection.
+     * @param columns   The names of the fields, in the order of their new positions. Names unknown to this
+     *                  layout get the runtime type Object.
+     * @return  The new layout.
+     */
+    FieldLayout project(List<String> columns)
+    {
+        LinkedHashMap<String, Class<?>> fields = new LinkedHashMap<>();
+        for (String x : columns)
+            fields.put(x, position(x) < 0 ? Object.class : types[position(x)]);
+        return new FieldLayout(fields);
+    }
+
+    /**
+     * Returns the position of the field with the given name.
+     * @param name  The name of the field.
+     * @return  The position or -1 if there is no such field.
+     */
+    int position(String name)
+    {
+        Integer position = positions.get(name);
+        return position == null ? -1 : position;
+    }
+
+    int size()
+    {
+        return names.length;
+    }
+
+    String getName(int position)
+    {
+        return names[position];
+    }
+
+    Class<?> getType(int position)
+    {
+        return types[position];
+    }
+
+    Kind getKind(int position)
+    {
+        return kinds[position];
+    }
+
+    int getSlot(int position)
+    {
+        return slots[position];
+    }
+
+    int getPrimitiveCount()
+    {
+        return primitiveCount;
+    }
+
+    int getObjectCount()
+    {
+        return objectCount;
+    }
+}
@@ -0,0 +1,116 @@
+package facades;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A precompiled recipe to convert a row of a ResultSet into the fields of a specific Model. <br />
+ * The plan is built once per Model class from its FieldLayout: every position gets a reader that pulls the
+ * value with the correct type. Binding the plan to a ResultSet resolves the column index of every field
+ * once, after which every row is written positionally into the FieldData of a model without any lookups
+ * by name and, for primitive columns, without boxing.
+ */
+class HydrationPlan
+{
+    // The layout of the fields the plan writes into.
+    private final FieldLayout layout;
+    // The names of the fields in the order of their positions.
+    private final String[] columns;
+    // The reader for every position.
+    private final ColumnReader[] readers;
+
+    /**
+     * A handler to pull a value of a specific type from a column of the ResultSet into a field.
+     */
+    @FunctionalInterface
+    interface ColumnReader
+    {
+        void read(ResultSet set, int column, FieldData target, int position) throws SQLException;
+    }
+
+    /**
+     * Compiles a plan for the given layout.
+     * @param layout    The layout of the fields of the model.
+     * @param readers   The reader to use for every runtime type.
+     */
+    HydrationPlan(FieldLayout layout, Map<Class<?>, ColumnReader> readers)
+    {
+        this.layout = layout;
+        columns = new String[layout.size()];
+        this.readers = new ColumnReader[layout.size()];
+        for (int i = 0; i < columns.length; ++i)
+        {
+            columns[i] = layout.getName(i);
+            this.readers[i] = readers.getOrDefault(layout.getType(i), readers.get(Object.class));
+        }
+    }
+
+    FieldLayout getLayout()
+    {
+        return layout;
+    }
+
+    /**
+     * Returns the names of the fields in the order of their positions.
+     * @return  The column names.
+     */
+    String[] getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Creates a new binding of this plan. The binding resolves the column indexes the first time it reads a
+     * row and again only when it is handed a different ResultSet.
+     * @return  The binding.
+     */
+    Binding bind()
+    {
+        return new Binding();
+    }
+
+    /**
+     * A plan bound to the layout of one ResultSet.
+     */
+    class Binding
+    {
+        // The ResultSet the indexes were resolved for.
+        private ResultSet resolvedFor;
+        // The index of the column of every position in the ResultSet, zero if the ResultSet lacks it.
+        private final int[] indexes = new int[columns.length];
+
+        /**
+         * Reads the current row of the ResultSet into the given fields and marks them as clean.
+         * @param set       The ResultSet positioned at the row to read.
+         * @param target    The fields of the model to load. Fields absent from the ResultSet become NULL.
+         * @throws SQLException Thrown by the ResultSet.
+         */
+        void read(ResultSet set, FieldData target) throws SQLException
+        {
+            if (set != resolvedFor)
+                resolve(set);
+            for (int i = 0; i < indexes.length; ++i)
+            {
+                if (indexes[i] == 0)
+                    target.loadNull(i);
+                else
+                    readers[i].read(set, indexes[i], target, i);
+            }
+            target.markClean();
+        }
+
+        private void resolve(ResultSet set) throws SQLException
+        {
+            ResultSetMetaData meta = set.getMetaData();
+            HashMap<String, Integer> labels = new HashMap<>();
+            for (int i = meta.getColumnCount(); i >= 1; --i) //keep the first occurrence of duplicate labels
+                labels.put(meta.getColumnLabel(i).toLowerCase(), i);
+            for (int i = 0; i < columns.length; ++i)
+                indexes[i] = labels.getOrDefault(columns[i].toLowerCase(), 0);
+            resolvedFor = set;
+        }
+    }
+}
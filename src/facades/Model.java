@@ -2,14 +2,23 @@ package facades;
 
 import database.connect.ConnectionManager;
 import exception.DBException;
+import exception.UncheckedSQLException;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.BiFunction;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * This is a Facade abstracting all interaction between the persistent and volatile storage of this application.
@@ -23,12 +32,11 @@ import java.util.function.BiFunction;
 public abstract class Model<T extends Model> implements QueryAble
 {
     // The fields this Model is maintaining.
-    private HashMap<String, FieldData> fields = new HashMap<>();
+    private FieldData fields;
     // The table this model is connected to.
     private String table;
-    // To Connection to the persistent storage.
-    private Connection connection;
-    // The query this Model is maintaining.
+    // The query this Model is maintaining, created when the model is first used to query. Models that only
+    // carry a row, like the ones returned by get, never create one.
     private QueryBuilder query;
     // Variable keeping track of the parametrized Model that is being used.
     // We unfortunately need this redundancy in order to be able to do type safe checked casting.
@@ -36,30 +44,19 @@ public abstract class Model<T extends Model> implements QueryAble
     // I'm going to go ahead and assume this design pattern has a name in Java but i don't know
     // how its called.
     private Class<T> class_;
-    // A simple representation of all the primary keys.
-    private ArrayList<String> primaryKeySet = new ArrayList<>();
-    // A simple mapping between the database representation and the resulting set.
-    // Integer is needed as the Types class in java.sql are not enum class.
-    // This is used to force strict typing in the values it accepts for each individual
-    // field of the model.
-    
-    private static HashMap<Integer, Class<?>> dBToField = new HashMap<>();
-    // A simple mapping to produce a handler for every single type the Model accepts and
-    // be able to 'pull' it from the ResultSet.
-    
-    private static HashMap<Class<?>, BiFunction<ResultSet, String, Object>> fieldToFunction = new HashMap<>();
-    
-    private static HashMap<Class<?>, CachedClass> cache = new HashMap<>();
-
-    private static class CachedClass
+    // The inspected schema of this class, shared by all models of the class.
+    private SchemaRegistry.TableSchema schema;
+    // The number of rows storeAll and updateAll send per batch when no batch size is given.
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    // The trivial constructor of every model class, looked up once instead of for every constructed row.
+    private static final ClassValue<Constructor<?>> constructors = new ClassValue<Constructor<?>>()
     {
-        // Variable keeping track whether or not the class is buffered.
-        Boolean isBuffered;
-        // A cache for storing all primaryKeySets for every specific Model.
-        ArrayList<String> primaryKeySets;
-        // A cache of all inspections.
-        HashMap<String, FieldData> inspections;
-    }
+        @Override
+        protected Constructor<?> computeValue(Class<?> type)
+        {
+            return type.getDeclaredConstructors()[0];
+        }
+    };
 
     /**
      * Constructs a new model based on the given table name.
@@ -68,17 +65,9 @@ public abstract class Model<T extends Model> implements QueryAble
      */
     public Model(Class<T> class_, String table)
     {
-        try {
-            setupConversions();
-            setConnection(ConnectionManager.getConnection());
-            setTable(table);
-            inspectFields();
-            setQuery(new QueryBuilder(getConnection(), getTable()));
-            setClass_(class_);
-            getCache().get(getClass()).isBuffered = true;
-        }catch (DBException e) {
-            e.printStackTrace();
-        }
+        setTable(table);
+        inspectFields();
+        setClass_(class_);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -95,7 +84,7 @@ public abstract class Model<T extends Model> implements QueryAble
     {
         try
         {
-            return class_.cast(class_.getDeclaredConstructors()[0].newInstance());
+            return class_.cast(constructors.get(class_).newInstance());
         }
         catch ( InstantiationException | InvocationTargetException | IllegalAccessException e)
         {
@@ -106,39 +95,87 @@ public abstract class Model<T extends Model> implements QueryAble
 
     /**
      * Find the Model with its primary key and load the contents.
+     * Within a UnitOfWork, the instance found earlier for the same key is returned instead. When the
+     * SecondLevelCache is enabled for the table, the contents are loaded from it if possible. <br />
+     * The contents are loaded into this model when it is still empty and not known in the UnitOfWork,
+     * otherwise into a new instance, so a model that is reused for several lookups never changes the row
+     * it already represents.
      * @param primary   The primary key to load the model with.
+     * @return  The found model, which is not necessarily this model, or an empty model if there is no such row.
      */
     public T find( Object primary)
     {
-        ResultSet set = getQuery()  .select()
-                                    .where(getPrimaryKeys().get(0), primary.toString())
-                                    .get();
-        try {
-            if (set.next())
-                fill(set);
+        List<Object> identity = UnitOfWork.identity(getClass(), Collections.singletonList(primary));
+        T known = lookup(identity);
+        if (known != null)
+            return known;
+        Model<?> target = isUnused() ? this : constructModel(getClass());
+        if (target.readCache(identity))
+            return cast(target.register(identity));
+        long stamp = cacheStamp();
+
+        boolean found;
+        try (QueryResult result = getQuery().select()
+                                            .where(getPrimaryKeys().get(0), primary.toString())
+                                            .open()) {
+            ResultSet set = result.getResultSet();
+            found = set.next();
+            if (found)
+                target.fill(set);
         } catch (SQLException e) {
             e.printStackTrace();
             return cast(constructModel(getClass()));
         }
-        return cast(this);
+        if (!found)
+            return cast(target);
+        target.writeCache(identity, stamp);
+        return cast(target.register(identity));
+    }
+
+    /**
+     * Finds the Model with its primary key on another thread, so independent lookups can run concurrently:
+     * <pre>
+     * CompletableFuture&lt;Lid&gt; lid = new Lid().findAsync(rr);
+     * CompletableFuture&lt;Fiets&gt; fiets = new Fiets().findAsync(regnr);
+     * CompletableFuture.allOf(lid, fiets).thenRun(...);
+     * </pre>
+     * This model must not be used until the future has completed. The lookup does not take part in the
+     * UnitOfWork or Transaction of the calling thread.
+     * @param primary   The primary key to load the model with.
+     * @return  The future found model.
+     * @see #find(Object)
+     */
+    public CompletableFuture<T> findAsync(Object primary)
+    {
+        return QueryExecutor.supply(() -> find(primary));
     }
 
     public boolean isEmpty()
     {
-        for (Map.Entry<String, FieldData> x : getFields().entrySet())
-        {
-            if (x.getValue().getRunTimeValue() != null)
-                return false;
-        }
-        return true;
+        return getFields().isEmpty();
     }
 
     /**
-     * Find a Model with its composite primary key and load the contents.
+     * Find a Model with its composite primary key and load the contents, into this model or a new instance
+     * like find(Object).
      * @param primary   The primary key set where the key represents its name and the value the value of the key.
+     * @see #find(Object)
      */
     public T find ( Map<String, Object> primary)
     {
+        ArrayList<Object> keys = new ArrayList<>();
+        for (String x : getPrimaryKeys())
+            keys.add(primary.get(x));
+        List<Object> identity = UnitOfWork.identity(getClass(), keys);
+        boolean complete = primary.size() == keys.size() && !keys.contains(null);
+        T known = complete ? lookup(identity) : null;
+        if (known != null)
+            return known;
+        Model<?> target = isUnused() ? this : constructModel(getClass());
+        if (complete && target.readCache(identity))
+            return cast(target.register(identity));
+        long stamp = cacheStamp();
+
         Comparator[] comps = new Comparator[primary.size()];
         int i = 0;
         for (Map.Entry<String, Object> x : primary.entrySet())
@@ -146,28 +183,188 @@ public abstract class Model<T extends Model> implements QueryAble
             comps[i] = Comparator.EQ(x.getKey(), x.getValue().toString());
             ++i;
         }
-        fill(getQuery().select().where(comps).get());
-        return cast(this);
+        boolean found;
+        try (QueryResult result = getQuery().select().where(comps).open()) {
+            ResultSet set = result.getResultSet();
+            found = set.next();
+            if (found)
+                target.fill(set);
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+        if (!complete || !found)
+            return cast(target);
+        target.writeCache(identity, stamp);
+        return cast(target.register(identity));
     }
 
     /**
-     * Overwrites the state of the Model to the persistent storage.
+     * Returns whether this model can be loaded with a row without changing a row it already represents: it
+     * holds no values and is not known in the current UnitOfWork.
+     * @return  True if the model is unused.
+     */
+    private boolean isUnused()
+    {
+        return isEmpty() && (UnitOfWork.current() == null || !UnitOfWork.current().contains(this));
+    }
+
+    /**
+     * Overwrites the fields of the Model that were modified since it was loaded or last written to the
+     * persistent storage. A field counts as modified when its value differs from the value it was loaded
+     * with, so the SET clause only holds those columns. Does nothing when no field was modified. <br />
+     * The row is identified by the primary keys it was loaded with. When a key was modified, both the old and
+     * the new key are removed from the SecondLevelCache and the UnitOfWork knows the model by its new key.
      */
     public T update()
     {
-        getQuery().update(prepareFields()).where(getPrimaryComparators()).execute();
+        HashMap<String, String> modified = prepareFields(true);
+        if (modified.isEmpty())
+            return cast(this);
+        ArrayList<Object> original = loadOriginalPrimaryKeys();
+        getQuery().update(modified).where(getPrimaryComparators()).execute();
+        markClean();
+        ArrayList<Object> keys = loadPrimaryKeys();
+        invalidateCache(original);
+        if (!keys.equals(original))
+        {
+            invalidateCache(keys);
+            // The row is now known by its new key.
+            UnitOfWork work = UnitOfWork.current();
+            if (work != null)
+            {
+                work.forget(UnitOfWork.identity(getClass(), original));
+                work.register(UnitOfWork.identity(getClass(), keys), this);
+            }
+        }
         return cast(this);
     }
 
     /**
      * Writes the current state to persistent storage through the connection and returns the
-     * primaryKeySet of the object.
+     * primaryKeySet of the object. A primary key that was left NULL is filled in with the key generated
+     * by the database, e.g. an auto-increment id, in the same round-trip.
      */
     
     public ArrayList<Object> store()
     {
-        getQuery().insert(prepareFields()).execute();
-        return loadPrimaryKeys();
+        int generatedKey = getGeneratedKeyPosition();
+        ArrayList<Object> generated = getQuery().insert(prepareFields()).executeReturningKeys();
+        if (generatedKey >= 0 && !generated.isEmpty())
+            getFields().setConverted(generatedKey, generated.get(0));
+        markClean();
+        ArrayList<Object> keys = loadPrimaryKeys();
+        invalidateCache(keys);
+        if (UnitOfWork.current() != null && !keys.contains(null))
+            UnitOfWork.current().register(UnitOfWork.identity(getClass(), keys), this);
+        return keys;
+    }
+
+    /**
+     * Writes all given models to persistent storage in batches of the default batch size.
+     * @param models    The models to store.
+     * @return  The keys generated by the database, in the order of the models.
+     * @see #storeAll(Collection, int)
+     */
+    public ArrayList<Object> storeAll(Collection<T> models)
+    {
+        return storeAll(models, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Writes all given models to persistent storage with one multi-row INSERT per batch instead of one
+     * round-trip per model. Like store, a primary key that was left NULL is filled in with the generated key,
+     * the stored rows are removed from the SecondLevelCache and registered in the current UnitOfWork.
+     * @param models    The models to store.
+     * @param batchSize The maximum number of models per statement.
+     * @return  The keys generated by the database, in the order of the models. Empty when the table does not
+     * generate keys.
+     * @throws IllegalStateException Thrown when keys had to be generated, but the database did not return
+     * one key per model.
+     */
+    public ArrayList<Object> storeAll(Collection<T> models, int batchSize)
+    {
+        int[] generatedKeys = new int[models.size()];
+        boolean generating = false;
+        int i = 0;
+        for (T x : models)
+        {
+            generatedKeys[i] = ((Model<?>) x).getGeneratedKeyPosition();
+            generating |= generatedKeys[i++] >= 0;
+        }
+        ArrayList<Object> generated = getQuery().insertAll(prepareFields(models), batchSize);
+        if (generating && generated.size() != models.size())
+            throw new IllegalStateException("Expected " + models.size() + " generated keys, but the database returned " +
+                    generated.size() + '.');
+        i = 0;
+        for (T x : models)
+        {
+            Model<?> model = x;
+            if (generatedKeys[i] >= 0)
+                model.getFields().setConverted(generatedKeys[i], generated.get(i));
+            ++i;
+            model.markClean();
+            ArrayList<Object> keys = model.loadPrimaryKeys();
+            invalidateCache(keys);
+            if (UnitOfWork.current() != null && !keys.contains(null))
+                UnitOfWork.current().register(UnitOfWork.identity(model.getClass(), keys), model);
+        }
+        return generated;
+    }
+
+    /**
+     * Returns the position of the primary key the database is expected to generate: the first one that is NULL.
+     * @return  The position or -1 if every primary key has a value.
+     */
+    private int getGeneratedKeyPosition()
+    {
+        for (String x : getPrimaryKeys())
+        {
+            if (getFields().isNull(position(x)))
+                return position(x);
+        }
+        return -1;
+    }
+
+    /**
+     * Overwrites the state of all given models in persistent storage in batches of the default batch size.
+     * @param models    The models to update.
+     * @see #updateAll(Collection, int)
+     */
+    public void updateAll(Collection<T> models)
+    {
+        updateAll(models, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Overwrites the state of all given models in persistent storage with a batched UPDATE. Like update, every
+     * row is identified by the primary keys it was loaded with, so a modified key is written as well. The
+     * models are marked clean afterwards.
+     * @param models    The models to update.
+     * @param batchSize The maximum number of models per batch.
+     */
+    public void updateAll(Collection<T> models, int batchSize)
+    {
+        ArrayList<HashMap<String, String>> keys = new ArrayList<>(models.size());
+        ArrayList<List<Object>> originals = new ArrayList<>(models.size());
+        for (T x : models)
+        {
+            Model<?> model = x;
+            ArrayList<Object> original = model.loadOriginalPrimaryKeys();
+            HashMap<String, String> row = new HashMap<>();
+            for (int i = 0; i < original.size(); ++i)
+                row.put(getPrimaryKeys().get(i), original.get(i).toString());
+            keys.add(row);
+            originals.add(original);
+        }
+        getQuery().updateAll(prepareFields(models), getPrimaryKeys(), keys, batchSize);
+        int i = 0;
+        for (T x : models)
+        {
+            Model<?> model = x;
+            model.markClean();
+            invalidateCache(originals.get(i++));
+            invalidateCache(model.loadPrimaryKeys());
+        }
     }
 
     @Override
@@ -184,26 +381,252 @@ public abstract class Model<T extends Model> implements QueryAble
         return cast(this);
     }
 
+    @Override
+    public T orderBy(String column)
+    {
+        getQuery().orderBy(column);
+        return cast(this);
+    }
+
+    @Override
+    public T orderByDescending(String column)
+    {
+        getQuery().orderByDescending(column);
+        return cast(this);
+    }
+
+    @Override
+    public T limit(int count)
+    {
+        getQuery().limit(count);
+        return cast(this);
+    }
+
+    @Override
+    public T offset(int count)
+    {
+        getQuery().offset(count);
+        return cast(this);
+    }
+
+    /**
+     * Locks the selected rows until the end of the current Transaction, e.g. to check and change a row
+     * without another transaction changing it in between:
+     * <pre>
+     * Transaction.run(() -&gt; new Fiets().where("registratienummer", "12").forUpdate().get());
+     * </pre>
+     */
+    @Override
+    public T forUpdate()
+    {
+        getQuery().forUpdate();
+        return cast(this);
+    }
+
+    /**
+     * Groups the results by the given column. Grouped results are not models, read them with project:
+     * <pre>
+     * new Rit().select(new String[]{"lidRijksregisternummer", "COUNT(*)"}).groupBy("lidRijksregisternummer").project()
+     * </pre>
+     * @param column    The column to group by.
+     * @return  The this pointer.
+     */
+    @Override
+    public T groupBy(String column)
+    {
+        getQuery().groupBy(column);
+        return cast(this);
+    }
+
+    @Override
+    public long count()
+    {
+        return getQuery().count();
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return getQuery().exists();
+    }
+
+    @Override
+    public Object min(String column)
+    {
+        return getQuery().min(column);
+    }
+
+    @Override
+    public Object max(String column)
+    {
+        return getQuery().max(column);
+    }
+
+    @Override
+    public Number sum(String column)
+    {
+        return getQuery().sum(column);
+    }
+
+    /**
+     * Executes the query and returns the first page of its results.
+     * @param size  The maximum number of models on the page.
+     * @return  The page.
+     * @see #page(int, String)
+     */
+    public Page<T> page(int size)
+    {
+        return page(size, null);
+    }
+
+    /**
+     * Executes the query and returns one page of its results through keyset pagination: the results are
+     * ordered by the primary keys and the page starts right after the row identified by the token. The
+     * database seeks to that row through the primary key index instead of reading and skipping all earlier
+     * rows like an offset does, so every page is equally fast. <br />
+     * Conditions added with where are applied to every page. When no columns were selected, all of them are.
+     * The order is fixed by the primary keys, so the query must not be ordered with orderBy.
+     * @param size              The maximum number of models on the page.
+     * @param continuationToken The token of the previous page or null for the first page.
+     * @return  The page.
+     * @throws IllegalStateException Thrown when the query was already ordered.
+     */
+    public Page<T> page(int size, String continuationToken)
+    {
+        if (size <= 0)
+            throw new IllegalArgumentException("The page size must be positive.");
+        if (getQuery().isOrdered())
+            throw new IllegalStateException("Pages are ordered by the primary keys, they cannot be ordered by other columns.");
+        if (getQuery().isUndecided())
+            getQuery().select();
+        if (continuationToken != null)
+            getQuery().where(seek(decodeToken(continuationToken)));
+        for (String x : getPrimaryKeys())
+            getQuery().orderBy(x);
+        // One row more than asked tells whether there is a next page.
+        getQuery().limit(size + 1);
+        ArrayList<T> items = get();
+        if (items.size() <= size)
+            return new Page<>(items, null);
+        items.remove(size);
+        return new Page<>(items, encodeToken(((Model<?>) items.get(size - 1)).loadPrimaryKeys()));
+    }
+
+    /**
+     * Builds the condition matching all rows after the row with the given primary key values, in the order
+     * of the primary keys: (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ...
+     * @param last  The values of the primary keys of the last row of the previous page, of their own type.
+     * @return  The condition.
+     */
+    private Comparator seek(List<Object> last)
+    {
+        Comparator tbr = null;
+        for (int i = 0; i < getPrimaryKeys().size(); ++i)
+        {
+            Comparator[] step = new Comparator[i + 1];
+            for (int j = 0; j < i; ++j)
+                step[j] = Comparator.EQ(getPrimaryKeys().get(j), last.get(j));
+            step[i] = Comparator.GT(getPrimaryKeys().get(i), last.get(i));
+            Comparator next = i == 0 ? step[0] : Comparator.AND(step);
+            tbr = tbr == null ? next : tbr.or(next);
+        }
+        return tbr;
+    }
+
+    private static String encodeToken(List<Object> keys)
+    {
+        StringBuilder token = new StringBuilder();
+        for (Object x : keys)
+        {
+            if (token.length() != 0)
+                token.append('.');
+            token.append(Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    x.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        return token.toString();
+    }
+
+    /**
+     * Decodes the values of the primary keys from a continuation token, converted back to the runtime type of
+     * the keys, so numeric keys are compared as numbers and not as text.
+     * @param token The continuation token.
+     * @return  The values of the primary keys.
+     */
+    private List<Object> decodeToken(String token)
+    {
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != getPrimaryKeys().size())
+            throw new IllegalArgumentException("Invalid continuation token: " + token);
+        ArrayList<Object> keys = new ArrayList<>(parts.length);
+        try
+        {
+            for (int i = 0; i < parts.length; ++i)
+            {
+                String value = new String(Base64.getUrlDecoder().decode(parts[i]), StandardCharsets.UTF_8);
+                keys.add(parseKey(getLayout().getType(position(getPrimaryKeys().get(i))), value));
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Invalid continuation token: " + token, e);
+        }
+        return keys;
+    }
+
+    /**
+     * Converts the text of a key value back to the given runtime type. Types without a conversion, such as
+     * dates, are compared as text.
+     */
+    private static Object parseKey(Class<?> type, String value)
+    {
+        if (type == Integer.class)
+            return Integer.valueOf(value);
+        if (type == Long.class)
+            return Long.valueOf(value);
+        if (type == Short.class)
+            return Short.valueOf(value);
+        if (type == Float.class)
+            return Float.valueOf(value);
+        if (type == Double.class)
+            return Double.valueOf(value);
+        if (type == BigDecimal.class)
+            return new BigDecimal(value);
+        return value;
+    }
+
+    /**
+     * Executes the query on another thread. This model must not be used until the future has completed.
+     * @return  The future resulting models.
+     * @see #get()
+     */
+    @Override
+    public CompletableFuture<ArrayList<T>> getAsync()
+    {
+        return QueryExecutor.supply(this::get);
+    }
+
     
     @Override
     public ArrayList<T> get()
     {
-        clear();
-        String[] a = new String[getPrimaryKeys().size()];
-        getPrimaryKeys().toArray(a);
-        getQuery().select(a);
-        getQuery().select(a);
-        ResultSet set = getQuery().get();
+        // A model known in the UnitOfWork keeps representing its row, the first row then gets a new instance.
+        boolean known = UnitOfWork.current() != null && UnitOfWork.current().contains(this);
+        if (!known)
+            clear();
+        selectPrimaryKeys();
         ArrayList<T> tbr = new ArrayList<>();
-        try
+        HydrationPlan.Binding binding = getPlan().bind();
+        try (QueryResult result = getQuery().open())
         {
+            ResultSet set = result.getResultSet();
             if (set.next()) {
-                fill(set);
-                tbr.add(cast(this));
+                T first = known ? constructModel(class_) : cast(this);
+                first.fill(binding, set);
+                tbr.add(first);
             }
             while (set.next()) {
                 T model = constructModel(class_);
-                model.fill(set);
+                model.fill(binding, set);
                 tbr.add(model);
             }
             return tbr;
@@ -215,10 +638,96 @@ public abstract class Model<T extends Model> implements QueryAble
         }
     }
 
+    /**
+     * Executes the query and returns only the selected columns of every row, without constructing models or
+     * adding the primary keys to the selection. Columns that were not selected are neither read nor stored.
+     * When nothing was selected, all columns are.
+     * <pre>
+     * new Lid().select(new String[]{"naam", "voornaam"}).project()
+     * </pre>
+     * @return  The selected columns of every row.
+     */
+    public ArrayList<Projection> project()
+    {
+        return project(Function.identity());
+    }
+
+    /**
+     * Executes the query and converts the selected columns of every row, e.g. into a DTO.
+     * @param mapper    The conversion of a row.
+     * @param <R>       The type of the converted rows.
+     * @return  The converted rows.
+     * @see #project()
+     */
+    public <R> ArrayList<R> project(Function<Projection, R> mapper)
+    {
+        if (getQuery().isUndecided())
+            getQuery().select();
+        HydrationPlan plan = schema.getProjection(getQuery().getSelectedColumns());
+        HydrationPlan.Binding binding = plan.bind();
+        ArrayList<R> tbr = new ArrayList<>();
+        try (QueryResult result = getQuery().open())
+        {
+            ResultSet set = result.getResultSet();
+            while (set.next())
+            {
+                FieldData row = new FieldData(plan.getLayout());
+                binding.read(set, row);
+                tbr.add(mapper.apply(new Projection(row)));
+            }
+            return tbr;
+        }
+        catch (SQLException e)
+        {
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    /**
+     * Executes the query and returns the resulting models lazily with the default fetch size.
+     * @return  The resulting models.
+     * @see #stream(int)
+     */
+    @Override
+    public Stream<T> stream()
+    {
+        return stream(QueryBuilder.getDefaultFetchSize());
+    }
+
+    /**
+     * Executes the query and returns the resulting models lazily. Unlike get, the rows are read from the
+     * database as the stream is consumed and a new model is only created for the current row, so a whole
+     * table can be processed in constant memory. This model itself is left untouched. <br />
+     * The stream holds on to a connection and <b>must</b> be closed, preferably with a try-with-resources block.
+     * @param fetchSize The number of rows the driver fetches at once.
+     * @return  The resulting models.
+     * @throws IllegalStateException Thrown for a negative fetch size within a Transaction.
+     * @see QueryBuilder#stream(int)
+     */
+    public Stream<T> stream(int fetchSize)
+    {
+        selectPrimaryKeys();
+        HydrationPlan.Binding binding = getPlan().bind();
+        return getQuery().stream(fetchSize).map(set -> {
+            T model = constructModel(class_);
+            model.fill(binding, set);
+            return model;
+        });
+    }
+
+    /**
+     * Makes sure the primary keys are always part of the selection.
+     */
+    private void selectPrimaryKeys()
+    {
+        String[] a = new String[getPrimaryKeys().size()];
+        getPrimaryKeys().toArray(a);
+        getQuery().select(a);
+    }
+
     private void clear()
     {
-        for (Map.Entry<String, FieldData> field : getFields().entrySet())
-            field.getValue().setRunTimeValue(null);
+        getFields().clear();
     }
 
     /**
@@ -228,24 +737,36 @@ public abstract class Model<T extends Model> implements QueryAble
      */
     public void setField(String name, Object value)
     {
-        if (!getFields().containsKey(name))
-            throw new IllegalArgumentException("Field with name: "+name+" not found.");
+        getFields().set(position(name), value);
+    }
 
-        getFields().get(name).setRunTimeValue(value);
+    /**
+     * Set an Integer field equal to the given value without boxing it.
+     * @param name  The name of the field to be set.
+     * @param value The value of the field to be set.
+     */
+    protected void setIntField(String name, int value)
+    {
+        getFields().setInt(position(name), value);
     }
 
     public void delete()
     {
         getQuery().delete().execute();
+        // The deleted rows are not known, so nothing of this table can be trusted anymore.
+        if (schema.getCache() != null)
+            schema.getCache().clear();
+        if (UnitOfWork.current() != null)
+            UnitOfWork.current().forgetAll(getClass());
     }
 
     @Override
     public String toString()
     {
         StringBuilder tbr = new StringBuilder();
-        for (HashMap.Entry<String, FieldData> entry : getFields().entrySet())
-            tbr.append(entry.getKey()).append(" = ").append(entry.getValue().toString()).append(", ");
-        return tbr.substring(0, tbr.length() - 3); //remove trailing comma and space
+        for (int i = 0; i < getLayout().size(); ++i)
+            tbr.append(getLayout().getName(i)).append(" = ").append(getFields().get(i)).append(", ");
+        return tbr.substring(0, tbr.length() - 2); //remove trailing comma and space
     }
 
     @Override
@@ -283,184 +804,41 @@ public abstract class Model<T extends Model> implements QueryAble
     }
 
     /**
-     * Queries the database and then allocates all columns with their respective types.
-     * @throws SQLException Thrown by the connection prepareStatement execution.
-     */
-    private void allocateFields() throws SQLException
-    {
-        PreparedStatement statement = getConnection().prepareStatement("SELECT * FROM " + getTable());
-        statement.execute();
-        ResultSetMetaData columns = statement.getResultSet().getMetaData();
-        for (int i = 1; i <= columns.getColumnCount(); ++i) { //index starts at one...
-            // Load query data and put the name of the column with a rune time type checkable FieldData.
-            getFields().put(columns.getColumnName(i), new FieldData(dBToField.get(columns.getColumnType(i))));
-        }
-    }
-
-    /**
-     * Setup the conversion fields for the models
-     */
-    private void setupConversions()
-    {
-        if (getFields().isEmpty())
-        {
-            setUpField();
-            setupFieldToFunction();
-        }
-    }
-
-    /**
-     * Setup a mapping between de database types deduced by PreparedStatement and
-     * the corresponding runtime class.
-     */
-    private static void setUpField()
-    {
-        dBToField.put(Types.CHAR, String.class);
-        dBToField.put(Types.ARRAY, Object[].class);
-        dBToField.put(Types.BIGINT, BigDecimal.class);
-        dBToField.put(Types.VARCHAR, String.class);
-        dBToField.put(Types.BINARY, Object.class);
-        dBToField.put(Types.BIT, Object.class);
-        dBToField.put(Types.BLOB, Object.class);
-        dBToField.put(Types.LONGNVARCHAR, String.class);
-        dBToField.put(Types.LONGVARBINARY, Object.class);
-        dBToField.put(Types.LONGVARCHAR, String.class);
-        dBToField.put(Types.TINYINT, Integer.class);
-        dBToField.put(Types.SMALLINT, Integer.class);
-        dBToField.put(Types.INTEGER, Integer.class);
-        dBToField.put(Types.BIGINT, BigDecimal.class);
-        dBToField.put(Types.FLOAT, Float.class);
-        dBToField.put(Types.DOUBLE, Double.class);
-        dBToField.put(Types.DECIMAL, BigDecimal.class);
-        dBToField.put(Types.DATE, Date.class);
-        dBToField.put(Types.DATE, Date.class);
-        dBToField.put(Types.TIMESTAMP, Timestamp.class);
-        dBToField.put(Types.TIME, Time.class);
-    }
-
-    /**
-     * Setup the mapping between the runtime time and the corresponding handler to pull it from
-     * the ResultSet.
-     */
-    private static void setupFieldToFunction()
-    {
-        // The normal code styling is changed here as there is a lot of noise. The only part that is important is the
-        // method that is invoked on the ResultSet variable.
-        // This will have to do until we find a solution to the parameter binding problem that does not involve forced
-        // try catch modules and a instead a direct reference to a function.
-        fieldToFunction.put(String.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getString(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-        fieldToFunction.put(Integer.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getInt(columnName_); }
-            catch (SQLException e) { return null;}
-        });
-        fieldToFunction.put(BigDecimal.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getBigDecimal(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-        fieldToFunction.put(Float.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getFloat(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-        fieldToFunction.put(Double.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getDouble(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-        fieldToFunction.put(Date.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getDate(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-        fieldToFunction.put(Timestamp.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getTimestamp(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-        fieldToFunction.put(Time.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getTime(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-        fieldToFunction.put(Object.class, (ResultSet set_, String columnName_) -> {
-            try { return set_.getObject(columnName_); }
-            catch (SQLException e) { return null; }
-        });
-    }
-
-    /**
-     * Inspects the class and stores or load its data in relation to the connection.
+     * Loads the fields of this class from the schema registry, which inspects the table the first time
+     * a model of this class is constructed.
      */
     private void inspectFields()
     {
-        try
-        {
-            setConnection(ConnectionManager.getConnection());
-            if (!isCached()) { // Check if the fields have already been inspected once.
-                allocateFields();
-                allocatePrimaryKeys();
-                cacheInspection();
-            } else
-                loadFromCache();
-        }
-        catch( DBException | SQLException e)
-        {
-            throw new RuntimeException();
-        }
+        schema = SchemaRegistry.get(getClass(), getTable());
+        setFields(schema.newFields());
     }
 
     /**
-     * Inspects and allocates the names of the primary keys.
-     */
-    private void allocatePrimaryKeys()
-    {
-        try
-        {
-            PreparedStatement statement = getConnection().prepareStatement("SHOW KEYS FROM " + getTable() + " WHERE Key_name = 'PRIMARY'");
-            statement.execute();
-            ResultSet results = statement.getResultSet();
-            while (results.next())
-                getPrimaryKeys().add(results.getString("Column_name"));
-        }
-        catch (SQLException e)
-        {
-            throw new RuntimeException();
-        }
-    }
-
-    /**
-     * Checks if the Class already has its fields cached.
-     * @return True if the Class is already cached.
+     * Returns the position of the field with the given name in the layout of this class.
+     * @param name  The name of the field.
+     * @return  The position.
      */
-    private boolean isCached()
+    private int position(String name)
     {
-        if (getCache().getOrDefault(getClass(), null) == null)
-            return false;
-        else
-            return getCache().get(getClass()).isBuffered;
+        int position = getLayout().position(name);
+        if (position < 0)
+            throw new IllegalArgumentException("Field with name: "+name+" not found.");
+        return position;
     }
 
-    /**
-     * Loads all fields of the inspected class into the object.
-     */
-    private void loadFromCache()
+    private FieldLayout getLayout()
     {
-        HashMap<String, FieldData> clone = new HashMap<>();
-        for (Map.Entry<String, FieldData> x : getCache().get(getClass()).inspections.entrySet())
-            clone.put(x.getKey(), x.getValue().clone());
-        setFields(clone);
-        primaryKeySet = getCache().get(getClass()).primaryKeySets;
+        return schema.getLayout();
     }
 
     /**
-     * Puts all fields of itself in the cache of inspections.
+     * Returns the hydration plan of this class.
+     *
+     * @return plan
      */
-    private void cacheInspection()
+    private HydrationPlan getPlan()
     {
-        HashMap<String, FieldData> clone = new HashMap<>();
-        for (Map.Entry<String, FieldData> x : getFields().entrySet())
-            clone.put(x.getKey(), x.getValue().clone());
-        getCache().put(getClass(),  new CachedClass());
-        getCache().get(getClass()).inspections = clone;
-        getCache().get(getClass()).primaryKeySets = getPrimaryKeys();
+        return schema.getPlan();
     }
 
 
@@ -478,58 +856,73 @@ public abstract class Model<T extends Model> implements QueryAble
      * Returns all the fields of the Model.
      * @return The fields of the  model.
      */
-    private HashMap<String, FieldData> getFields()
+    private FieldData getFields()
     {
         return fields;
     }
 
-    private void setFields(HashMap<String, FieldData> resultset)
+    private void setFields(FieldData resultset)
     {
         this.fields = resultset;
     }
 
     /**
-     * Returns the connection.
+     * Borrows a connection from the pool for direct access to the persistent storage.
+     * The connection must be closed after use in order to return it to the pool. Within a Transaction, the
+     * connection of the transaction is returned instead and closing it has no effect.
      *
      * @return connection
+     * @throws DBException Thrown when no connection could be borrowed.
      */
-    public Connection getConnection()
+    public Connection getConnection() throws DBException
     {
-        return connection;
+        if (Transaction.current() != null)
+            return Transaction.current().share();
+        return ConnectionManager.getConnection();
     }
 
     /**
-     * Set the connection
-     * @param connection The connection associated with the class.
+     * Returs a field of the object.
+     * @param name  The name of the field.
+     * @return The value of the field associated with the given name.
      */
-    private void setConnection(Connection connection)
+    public Object getField(String name)
     {
-        this.connection = connection;
+        return getFields().get(position(name));
     }
 
     /**
-     * Returs a field of the object.
+     * Returns an Integer field of the object without boxing it.
      * @param name  The name of the field.
      * @return The value of the field associated with the given name.
+     * @throws NullPointerException Thrown when the field is NULL.
      */
-    public Object getField(String name)
+    protected int getIntField(String name)
     {
-        return getFields().get(name).getRunTimeValue();
+        return getFields().getInt(position(name));
     }
 
     /**
-     * Returns the query.
+     * Returns the query, creating it the first time.
      *
      * @return query
      */
     private QueryBuilder getQuery()
     {
+        if (query == null)
+            query = new QueryBuilder(getTable());
         return query;
     }
 
-    private void setQuery(QueryBuilder query)
+    /**
+     * Returns whether two queries hold the same pending query, where a query that was never created is
+     * the same as an empty one.
+     */
+    private static boolean sameQuery(QueryBuilder a, QueryBuilder b)
     {
-        this.query = query;
+        if (a == null || b == null)
+            return (a == null || a.isEmpty()) && (b == null || b.isEmpty());
+        return a.equals(b);
     }
 
     /**
@@ -537,9 +930,9 @@ public abstract class Model<T extends Model> implements QueryAble
      *
      * @return primaryKeySet
      */
-    public ArrayList<String> getPrimaryKeys()
+    public List<String> getPrimaryKeys()
     {
-        return primaryKeySet;
+        return schema.getPrimaryKeys();
     }
 
     /**
@@ -555,6 +948,22 @@ public abstract class Model<T extends Model> implements QueryAble
         return intersect;
     }
 
+    /**
+     * Returns the values of the primary keys as they were last loaded from or written to the persistent
+     * storage, which identify the row even when a key was modified since. A key that was NULL then has its
+     * current value.
+     */
+    private ArrayList<Object> loadOriginalPrimaryKeys()
+    {
+        ArrayList<Object> keys = new ArrayList<>();
+        for (String x : getPrimaryKeys())
+        {
+            int key = position(x);
+            keys.add(getFields().getOriginal(key) != null ? getFields().getOriginal(key) : getFields().get(key));
+        }
+        return keys;
+    }
+
     /**
      * Fill the model with the current state of the of the ResultSet.
      * @param results   The results to be loaded in the Model.
@@ -564,12 +973,24 @@ public abstract class Model<T extends Model> implements QueryAble
     @SuppressWarnings("WeakerAccess")
     protected void fill(ResultSet results)
     {
-        for(Map.Entry<String, FieldData> x : getFields().entrySet())
+        fill(getPlan().bind(), results);
+    }
+
+    /**
+     * Fill the model with the current row of the ResultSet through a binding of the hydration plan.
+     * Reusing one binding for all rows of a ResultSet resolves the column indexes only once.
+     * @param binding   The binding of the plan of this class.
+     * @param results   The results to be loaded in the Model.
+     */
+    void fill(HydrationPlan.Binding binding, ResultSet results)
+    {
+        try
         {
-            //noinspection SuspiciousMethodCalls
-            BiFunction<ResultSet, String, Object> handler = fieldToFunction.get(x.getValue().getRuntimeType());
-            Object runtimeValue = handler.apply(results, x.getKey());
-            x.getValue().setRunTimeValue(runtimeValue);
+            binding.read(results, getFields());
+        }
+        catch (SQLException e)
+        {
+            throw new UncheckedSQLException(e);
         }
     }
 
@@ -579,29 +1000,143 @@ public abstract class Model<T extends Model> implements QueryAble
      */
     
     private HashMap<String, String> prepareFields()
+    {
+        return prepareFields(false);
+    }
+
+    /**
+     * Prepares the fields of the model to be used in a query.
+     * @param modifiedOnly  Whether to only prepare the fields modified since the model was last loaded or written.
+     * @return  The prepared fields.
+     */
+    private HashMap<String, String> prepareFields(boolean modifiedOnly)
     {
         HashMap<String, String> fields = new HashMap<>();
-        for (Map.Entry<String, FieldData> x : getFields().entrySet())
+        for (int i = 0; i < getLayout().size(); ++i)
         {
-            if (x.getValue().getRunTimeValue() == null)
-                fields.put(x.getKey(), null);
-            else
-                fields.put(x.getKey(), x.getValue().getRunTimeValue().toString());
+            if (modifiedOnly && !getFields().isDirty(i))
+                continue;
+            Object value = getFields().get(i);
+            fields.put(getLayout().getName(i), value == null ? null : value.toString());
         }
         return fields;
     }
 
     /**
-     * Returns all comparators to identify a row by its primary keys.
+     * Prepares the fields of all given models to be used in a batched query.
+     * @param models    The models to prepare.
+     * @return  The prepared fields of every model.
+     */
+    private ArrayList<HashMap<String, String>> prepareFields(Collection<T> models)
+    {
+        ArrayList<HashMap<String, String>> rows = new ArrayList<>(models.size());
+        for (T x : models)
+            rows.add(((Model<?>) x).prepareFields());
+        return rows;
+    }
+
+    /**
+     * Marks all fields as being in sync with the persistent storage.
+     */
+    private void markClean()
+    {
+        getFields().markClean();
+    }
+
+    /**
+     * Loads the contents of the row with the given identity from the SecondLevelCache. Within a Transaction
+     * the cache is bypassed, as the transaction has to see its own changes and its isolation level.
+     * @param identity  The identity of the row.
+     * @return  True if the cache is enabled and held the row.
+     */
+    private boolean readCache(List<Object> identity)
+    {
+        if (schema.getCache() == null || Transaction.current() != null)
+            return false;
+        FieldData values = schema.getCache().get(identity);
+        if (values == null)
+            return false;
+        getFields().loadFrom(values);
+        return true;
+    }
+
+    /**
+     * Returns the stamp of the SecondLevelCache to take before reading a row that is to be cached.
+     * @return  The stamp or 0 if the cache is not enabled.
+     */
+    private long cacheStamp()
+    {
+        return schema.getCache() == null ? 0 : schema.getCache().stamp();
+    }
+
+    /**
+     * Puts the contents of this model in the SecondLevelCache, if it is enabled. Only call this right after
+     * the row was read into this model.
+     * Rows read within a Transaction are not cached, as they may hold changes that are never committed.
+     * Neither are rows invalidated while they were read, as the values read may already be outdated.
+     * @param identity  The identity of the row.
+     * @param stamp     The stamp of the cache taken before the row was read.
+     */
+    private void writeCache(List<Object> identity, long stamp)
+    {
+        if (schema.getCache() == null || isEmpty() || Transaction.current() != null)
+            return;
+        schema.getCache().put(identity, getFields().copy(), stamp);
+    }
+
+    /**
+     * Removes the row with the given primary key values from the SecondLevelCache, if it is enabled.
+     * Within a Transaction the row is removed again after the commit, as another thread may have cached the
+     * old row in the meantime.
+     * @param keys  The values of the primary keys.
+     */
+    private void invalidateCache(List<Object> keys)
+    {
+        if (schema.getCache() == null)
+            return;
+        List<Object> identity = UnitOfWork.identity(getClass(), keys);
+        SecondLevelCache cache = schema.getCache();
+        cache.invalidate(identity);
+        if (Transaction.current() != null)
+            Transaction.afterCommit(() -> cache.invalidate(identity));
+    }
+
+    /**
+     * Looks up the model with the given identity in the current UnitOfWork.
+     * @param identity  The identity of the model.
+     * @return  The known model or null if there is no UnitOfWork or the model is not known in it.
+     */
+    private T lookup(List<Object> identity)
+    {
+        UnitOfWork work = UnitOfWork.current();
+        return work == null ? null : cast(work.lookup(identity));
+    }
+
+    /**
+     * Registers this model with the given identity in the current UnitOfWork, if it was found.
+     * @param identity  The identity of the model.
+     * @return  The this pointer.
+     */
+    private T register(List<Object> identity)
+    {
+        UnitOfWork work = UnitOfWork.current();
+        if (work != null && !isEmpty())
+            work.register(identity, this);
+        return cast(this);
+    }
+
+    /**
+     * Returns all comparators to identify a row by its primary keys. A primary key that was modified since
+     * the model was loaded is identified by its original value.
      * @return  The comparators.
      */
     
     private Comparator[] getPrimaryComparators()
     {
-        ArrayList<Object> values = loadPrimaryKeys();
-        Comparator[] comp = new Comparator[values.size()];
-        for (int i = 0; i < values.size(); ++i)
-            comp[i] = Comparator.EQ(getPrimaryKeys().get(i), values.get(i).toString());
+        ArrayList<Object> keys = loadOriginalPrimaryKeys();
+        Comparator[] comp = new Comparator[keys.size()];
+        for (int i = 0; i < comp.length; ++i)
+            comp[i] = Comparator.EQ(getPrimaryKeys().get(i), keys.get(i).toString());
         return comp;
     }
 
@@ -618,17 +1153,6 @@ public abstract class Model<T extends Model> implements QueryAble
         this.class_ = class_;
     }
 
-    /**
-     * Returns the cache.
-     *
-     * @return cache
-     */
-    
-    private static HashMap<Class<?>, CachedClass> getCache()
-    {
-        return cache;
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -638,9 +1162,9 @@ public abstract class Model<T extends Model> implements QueryAble
 
         return getFields().equals(model.getFields()) &&
                 getTable().equals(model.getTable()) &&
-                getQuery().equals(model.getQuery()) &&
+                sameQuery(query, model.query) &&
                 class_.equals(model.class_) &&
-                primaryKeySet.equals(model.primaryKeySet);
+                getPrimaryKeys().equals(model.getPrimaryKeys());
     }
 
     @Override
@@ -648,10 +1172,9 @@ public abstract class Model<T extends Model> implements QueryAble
     {
         int result = getFields().hashCode();
         result = 31 * result + getTable().hashCode();
-        result = 31 * result + getConnection().hashCode();
-        result = 31 * result + getQuery().hashCode();
+        result = 31 * result + (query == null || query.isEmpty() ? 0 : query.hashCode());
         result = 31 * result + class_.hashCode();
-        result = 31 * result + primaryKeySet.hashCode();
+        result = 31 * result + getPrimaryKeys().hashCode();
         return result;
     }
 }
@@ -0,0 +1,54 @@
+package facades;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of the results of a query, together with the token to fetch the next page. <br />
+ * The token only identifies the position after the last result of this page, so pages can be fetched in
+ * any later request, e.g. when a list is scrolled or an export continues, without keeping anything open:
+ * <pre>
+ * Page&lt;Lid&gt; page = new Lid().page(50);
+ * while (page.hasNext())
+ *     page = new Lid().page(50, page.getContinuationToken());
+ * </pre>
+ * @param <T>   The type of the results.
+ */
+public final class Page<T>
+{
+    // The results on this page.
+    private final List<T> items;
+    // The token to fetch the next page with, null if this is the last page.
+    private final String continuationToken;
+
+    Page(List<T> items, String continuationToken)
+    {
+        this.items = Collections.unmodifiableList(items);
+        this.continuationToken = continuationToken;
+    }
+
+    public List<T> getItems()
+    {
+        return items;
+    }
+
+    /**
+     * Returns the token to pass to Model.page to fetch the next page.
+     * @return  The token or null if this is the last page.
+     */
+    public String getContinuationToken()
+    {
+        return continuationToken;
+    }
+
+    public boolean hasNext()
+    {
+        return continuationToken != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Page{items=" + items.size() + ", continuationToken=" + continuationToken + '}';
+    }
+}
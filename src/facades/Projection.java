@@ -0,0 +1,75 @@
+package facades;
+
+/**
+ * A read-only row holding only the columns selected by a projection query, returned by Model.project
+ * instead of a complete model. <br />
+ * Values are read once from the ResultSet into the same unboxed storage a model uses, no other column is
+ * read or allocated for.
+ */
+public final class Projection
+{
+    // The values of the selected columns.
+    private final FieldData values;
+
+    Projection(FieldData values)
+    {
+        this.values = values;
+    }
+
+    /**
+     * Returns the value of a selected column.
+     * @param column    The column, as it was selected.
+     * @return  The value or null if it is NULL.
+     */
+    public Object get(String column)
+    {
+        return values.get(position(column));
+    }
+
+    /**
+     * Returns the value of a selected column by its index in the selection.
+     * @param index The index of the column, starting at 0.
+     * @return  The value or null if it is NULL.
+     */
+    public Object get(int index)
+    {
+        return values.get(index);
+    }
+
+    /**
+     * Returns the value of a selected Integer column without boxing it.
+     * @param column    The column, as it was selected.
+     * @return  The value.
+     * @throws NullPointerException Thrown when the value is NULL.
+     */
+    public int getInt(String column)
+    {
+        return values.getInt(position(column));
+    }
+
+    /**
+     * Returns the number of selected columns.
+     * @return  The number of columns.
+     */
+    public int size()
+    {
+        return values.getLayout().size();
+    }
+
+    private int position(String column)
+    {
+        int position = values.getLayout().position(column);
+        if (position < 0)
+            throw new IllegalArgumentException("Column with name: " + column + " not selected.");
+        return position;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder tbr = new StringBuilder("{");
+        for (int i = 0; i < size(); ++i)
+            tbr.append(i == 0 ? "" : ", ").append(values.getLayout().getName(i)).append(" = ").append(values.get(i));
+        return tbr.append('}').toString();
+    }
+}
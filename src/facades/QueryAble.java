@@ -1,6 +1,7 @@
 package facades;
 
-import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * An interface for simple querying to the persistent storage. <br />
@@ -55,14 +56,115 @@ public interface QueryAble
      */
     QueryAble where(String lhs, String rhs);
 
+    /**
+     * Order the results by the given column, ascending. Every call adds a column with a lower precedence.
+     * @param column    The column to order by.
+     * @return  The this pointer.
+     */
+    QueryAble orderBy(String column);
+
+    /**
+     * Order the results by the given column, descending. Every call adds a column with a lower precedence.
+     * @param column    The column to order by.
+     * @return  The this pointer.
+     */
+    QueryAble orderByDescending(String column);
+
+    /**
+     * Return at most the given number of results.
+     * @param count The maximum number of results.
+     * @return  The this pointer.
+     */
+    QueryAble limit(int count);
+
+    /**
+     * Skip the given number of results.
+     * @param count The number of results to skip.
+     * @return  The this pointer.
+     */
+    QueryAble offset(int count);
+
+    /**
+     * Lock the selected rows until the end of the transaction.
+     * @return  The this pointer.
+     */
+    QueryAble forUpdate();
+
+    /**
+     * Group the results by the given column. Every call adds a column.
+     * @param column    The column to group by.
+     * @return  The this pointer.
+     */
+    QueryAble groupBy(String column);
+
+    /**
+     * Executes the query as a count of the matching rows.
+     * @return The number of rows.
+     */
+    long count();
+
+    /**
+     * Executes the query as a check whether any row matches.
+     * @return True if at least one row matches.
+     */
+    boolean exists();
+
+    /**
+     * Executes the query as the minimum of a column over the matching rows.
+     * @param column    The column.
+     * @return The minimum or null if no row matches.
+     */
+    Object min(String column);
+
+    /**
+     * Executes the query as the maximum of a column over the matching rows.
+     * @param column    The column.
+     * @return The maximum or null if no row matches.
+     */
+    Object max(String column);
+
+    /**
+     * Executes the query as the sum of a column over the matching rows.
+     * @param column    The column.
+     * @return The sum or null if no row matches.
+     */
+    Number sum(String column);
+
     /**
      * Executes the query and returns the results.
      * @return The results
      */
     Object get();
 
+    /**
+     * Executes the query and returns the results lazily, one row at a time, so that large results can be
+     * processed in constant memory. The stream holds on to a connection until it is closed.
+     * @return The results
+     */
+    Stream<?> stream();
+
     /**
      * Executes the query and possibly store some results somewhere in volatile storage.
      */
     void execute();
+
+    /**
+     * Executes the query on another thread, so the calling thread, e.g. the JavaFX application thread, is
+     * not blocked. The query must not be modified until the future has completed.
+     * @return The future results.
+     */
+    default CompletableFuture<?> getAsync()
+    {
+        return QueryExecutor.supply(this::get);
+    }
+
+    /**
+     * Executes the query on another thread.
+     * @return The future completion of the query.
+     * @see #getAsync()
+     */
+    default CompletableFuture<Void> executeAsync()
+    {
+        return QueryExecutor.run(this::execute);
+    }
 }
@@ -1,11 +1,18 @@
 package facades;
 
+import database.connect.ConnectionManager;
+import database.connect.DBProp;
+import exception.DBException;
 import exception.UncheckedSQLException;
-
+
 ;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A class representing a Query builder in order to add an abstraction layer to the query language used.
@@ -14,22 +21,51 @@ import java.util.*;
  */
 class QueryBuilder implements QueryAble
 {
+    // The maximum number of SQL templates kept. Queries are built from a fixed set of shapes in code, so this
+    // is only reached when columns are chosen at runtime, in which case the cache simply starts over.
+    private static final int MAX_TEMPLATES = 1024;
+    // The generated SQL of every query shape, shared by all builders.
+    private static final ConcurrentHashMap<QueryShape, String> templates = new ConcurrentHashMap<>();
+
     // The connection as the main transaction point between persistent and volatile storage.
+    // When no connection is given, the connection of the active Transaction is used, if any, and otherwise
+    // one is borrowed from the ConnectionManager for every query.
     private Connection connection;
+    // The connection borrowed for the modification that is currently running, if any.
+    private Connection borrowed;
+    // The result of the last call to get, open until release is called or the next query runs.
+    private QueryResult current;
     // The name of the table in the persistent storage.
     private String table;
-    // A collection representing all columns to be selected.
+    // A collection representing all columns to be selected, without duplicates, in the order they were added.
     
-    private HashSet<String> selections = new HashSet<>();
+    private final ArrayList<String> selections = new ArrayList<>();
     // A collection of comparisons to specify a subset to query.
     
-    private ArrayList<Comparator> comparisons = new ArrayList<>();
-    // A collection of columns and values to be modified in some way.
-    
-    private HashMap<String, String> modifiers = new HashMap<>();
+    private final ArrayList<Comparator> comparisons = new ArrayList<>();
+    // The columns to be modified in some way, in the order they were added.
+    private final ArrayList<String> modifierColumns = new ArrayList<>();
+    // The values of the columns to be modified, by the index of their column.
+    private final ArrayList<String> modifierValues = new ArrayList<>();
+    // The columns to order the results by, in order of precedence.
+    private final ArrayList<String> orderColumns = new ArrayList<>();
+    // Whether the column with the same index is ordered descending.
+    private final ArrayList<Boolean> orderDescending = new ArrayList<>();
+    // The columns to group the results by.
+    private final ArrayList<String> groupColumns = new ArrayList<>();
+    // The maximum number of rows to return, -1 for all of them.
+    private int limit = -1;
+    // The number of rows to skip, -1 for none.
+    private int offset = -1;
+    // Whether the selected rows are locked until the end of the transaction.
+    private boolean forUpdate;
     // A variable simply representing what mode this query is in. Possible modes are
     // enumerated in QueryMode.
     private QueryMode queryMode;
+    // The values bound to the placeholders of the last generated SQL, in order.
+    private final ArrayList<Object> parameters = new ArrayList<>();
+    // The shape of the current query, reused as the key to look up its template.
+    private final QueryShape shape = new QueryShape();
 
     /**
      * Enum representing all possible states the builder can be in.
@@ -48,6 +84,15 @@ class QueryBuilder implements QueryAble
         DELETE
     }
 
+    /**
+     * Construct a new QueryBuilder for the given table that borrows a pooled connection for every query.
+     * @param table the table the QueryBuilder communicates with in the persistent storage.
+     */
+    QueryBuilder(String table)
+    {
+        this(null, table);
+    }
+
     /**
      * Construct a new QueryBuilder with the given connection and table.
      * @param connection The connection the QueryBuilder will use to communicate between
@@ -62,23 +107,92 @@ class QueryBuilder implements QueryAble
     }
 
     /**
-     * Simply return the state of the builder in SQL format.
+     * Simply return the state of the builder in SQL format. Values are never inlined: every value is
+     * represented by a placeholder and collected in the parameters, so queries that only differ in
+     * their values share the same SQL and thus the same prepared statement. <br />
+     * The SQL is only generated the first time a query shape is seen, after that the cached template is
+     * returned and only the parameters are collected.
      * @return  The sql string.
      */
      String toSql()
     {
-        StringBuilder tbr = new StringBuilder(getQueryMode().toString());
-        if (getQueryMode() != QueryMode.UNDECIDED)
+        getParameters().clear();
+        if ((getQueryMode() == QueryMode.INSERT || getQueryMode() == QueryMode.UPDATE) && getModifierColumns().isEmpty())
+        {
+            String sql = getQueryMode().toString();
+            setQueryMode(QueryMode.UNDECIDED);
+            return sql;
+        }
+
+        describe(shape);
+        String sql = templates.get(shape);
+        if (sql == null)
+        {
+            sql = generateSql();
+            if (templates.size() >= MAX_TEMPLATES)
+                templates.clear();
+            templates.put(shape.copy(), sql);
+        }
+        collectParameters();
+        return sql;
+    }
+
+    /**
+     * Describes the current query by everything that determines its SQL, but not by its values.
+     * @param shape The shape to overwrite.
+     */
+    private void describe(QueryShape shape)
+    {
+        shape.reset(getTable(), getQueryMode());
+        shape.add(getSelections().size());
+        for (int i = 0; i < getSelections().size(); ++i)
+            shape.add(getSelections().get(i));
+        shape.add(getModifierColumns().size());
+        for (int i = 0; i < getModifierColumns().size(); ++i)
+            shape.add(getModifierColumns().get(i));
+        shape.add(getComparisons().size());
+        for (int i = 0; i < getComparisons().size(); ++i)
+            getComparisons().get(i).describe(shape);
+        shape.add(groupColumns.size());
+        for (int i = 0; i < groupColumns.size(); ++i)
+            shape.add(groupColumns.get(i));
+        shape.add(orderColumns.size());
+        for (int i = 0; i < orderColumns.size(); ++i)
         {
-            if (getQueryMode() == QueryMode.SELECT)
-                selectSql(tbr);
-            if (getQueryMode() == QueryMode.INSERT)
-                insertSql(tbr);
-            if (getQueryMode() == QueryMode.UPDATE)
-                updateSql(tbr);
-            if (getQueryMode() == QueryMode.DELETE)
-                deleteSql(tbr);
+            shape.add(orderColumns.get(i));
+            shape.add(orderDescending.get(i));
         }
+        shape.add(limit);
+        shape.add(offset);
+        shape.add(forUpdate);
+    }
+
+    /**
+     * Collects the values of the current query in the order of the placeholders of its SQL.
+     */
+    private void collectParameters()
+    {
+        for (int i = 0; i < getModifierValues().size(); ++i)
+            getParameters().add(getModifierValues().get(i));
+        for (int i = 0; i < getComparisons().size(); ++i)
+            getComparisons().get(i).collectValues(getParameters());
+    }
+
+    /**
+     * Generates the SQL of the current query.
+     * @return  The sql string.
+     */
+    private String generateSql()
+    {
+        StringBuilder tbr = new StringBuilder(getQueryMode().toString());
+        if (getQueryMode() == QueryMode.SELECT)
+            selectSql(tbr);
+        if (getQueryMode() == QueryMode.INSERT)
+            insertSql(tbr);
+        if (getQueryMode() == QueryMode.UPDATE)
+            updateSql(tbr);
+        if (getQueryMode() == QueryMode.DELETE)
+            deleteSql(tbr);
         return tbr.toString();
     }
 
@@ -90,61 +204,56 @@ class QueryBuilder implements QueryAble
 
     private void updateSql( StringBuilder sql)
     {
-           if (getModifiers().size() != 0)
-           {
-               sql.append(' ').append(getTable()).append(" SET ");
-               for(Map.Entry<String,String> x : getModifiers().entrySet())
-                   sql.append(x.getKey()).append(" = ").append('\'').append(x.getValue()).append("\'").append(", ");
-               sql.delete(sql.length() - 2, sql.length());
-               comparisonsSql(sql);
-           }
-           else
-               setQueryMode(QueryMode.UNDECIDED);
+        sql.append(' ').append(getTable()).append(" SET ");
+        for (int i = 0; i < getModifierColumns().size(); ++i)
+            sql.append(i == 0 ? "" : ", ").append(getModifierColumns().get(i)).append(" = ?");
+        comparisonsSql(sql);
     }
 
     private void insertSql( StringBuilder sql)
     {
-        if (getModifiers().size() != 0)
-        {
-            sql.append(" INTO ").append(getTable()).append(" (");
-            for (String x : getModifiers().keySet())
-                sql.append(x).append(", ");
-            sql.delete(sql.length() - 2, sql.length());
-            sql.append(") VALUES (");
-            for (Object x : getModifiers().values()) {
-                if (x == null)
-                    x = "NULL";
-                sql.append('\'').append(x.toString()).append('\'').append(", ");
-            }
-            sql.delete(sql.length() - 2, sql.length());
-            sql.append(')');
-        }
-        else
-            setQueryMode(QueryMode.UNDECIDED);
+        sql.append(" INTO ").append(getTable()).append(" (");
+        for (int i = 0; i < getModifierColumns().size(); ++i)
+            sql.append(i == 0 ? "" : ", ").append(getModifierColumns().get(i));
+        sql.append(") VALUES (");
+        for (int i = 0; i < getModifierColumns().size(); ++i)
+            sql.append(i == 0 ? "?" : ", ?");
+        sql.append(')');
     }
 
+    /**
+     * Appends the WHERE clause, in which all comparisons have to hold.
+     * @param sql   The SQL to append to.
+     */
     private void comparisonsSql( StringBuilder sql)
     {
         if (getComparisons().size() != 0)
         {
             sql.append(" WHERE ");
-            for (Comparator x : getComparisons())
-                sql.append(x.toString()).append(", ");
-            sql.delete(sql.length() - 2, sql.length());
+            if (getComparisons().size() == 1)
+                getComparisons().get(0).appendSql(sql);
+            else
+                Comparator.AND(getComparisons().toArray(new Comparator[0])).appendSql(sql);
         }
     }
 
     private void selectSql( StringBuilder sql)
     {
-        if (getSelections().size() != 0)
-        {
-            sql.append(' ');
-            for (String x : getSelections())
-                sql.append(x).append(", ");
-            sql.delete(sql.length() - 2, sql.length());
-        }
+        for (int i = 0; i < getSelections().size(); ++i)
+            sql.append(i == 0 ? " " : ", ").append(getSelections().get(i));
         sql.append(" FROM ").append(getTable());
         comparisonsSql(sql);
+        for (int i = 0; i < groupColumns.size(); ++i)
+            sql.append(i == 0 ? " GROUP BY " : ", ").append(groupColumns.get(i));
+        for (int i = 0; i < orderColumns.size(); ++i)
+            sql.append(i == 0 ? " ORDER BY " : ", ").append(orderColumns.get(i)).append(orderDescending.get(i) ? " DESC" : "");
+        // The limit and offset are inlined, MySQL does not accept them as string parameters.
+        if (limit >= 0)
+            sql.append(" LIMIT ").append(limit);
+        if (offset >= 0)
+            sql.append(limit >= 0 ? " OFFSET " : " LIMIT 18446744073709551615 OFFSET ").append(offset);
+        if (forUpdate)
+            sql.append(" FOR UPDATE");
     }
 
     
@@ -153,11 +262,12 @@ class QueryBuilder implements QueryAble
     {
         if (getQueryMode() == QueryMode.SELECT || getQueryMode() == QueryMode.UNDECIDED)
         {
-            if (getSelections().size() >= 1 && getSelections().iterator().next().equals("*"))
+            if (getSelections().size() >= 1 && getSelections().get(0).equals("*"))
                 return this;
 
             setQueryMode(QueryMode.SELECT);
-            getSelections().addAll(Arrays.asList(selections));
+            for (String x : selections)
+                addSelection(x);
             return this;
         }
         else
@@ -170,11 +280,11 @@ class QueryBuilder implements QueryAble
     {
         if (getQueryMode() == QueryMode.SELECT || getQueryMode() == QueryMode.UNDECIDED)
         {
-            if (getSelections().size() >= 1 && getSelections().iterator().next().equals("*"))
+            if (getSelections().size() >= 1 && getSelections().get(0).equals("*"))
                 return this;
 
             setQueryMode(QueryMode.SELECT);
-            getSelections().add(selection);
+            addSelection(selection);
             return this;
         }
         else
@@ -196,26 +306,349 @@ class QueryBuilder implements QueryAble
             throw new RuntimeException();
     }
 
+    /**
+     * Executes the query and returns its results. The ResultSet stays usable until release is called,
+     * which closes it together with its statement and returns the borrowed connection to the pool.
+     * Prefer open, which hands the caller a result to close.
+     * @return  The results of the query.
+     */
     public ResultSet get()
     {
+        release();
+        current = open();
+        return current.getResultSet();
+    }
+
+    /**
+     * Executes the query and returns its open result, which owns the ResultSet, its statement and the
+     * borrowed connection, if any. The result has to be closed, preferably with a try-with-resources block:
+     * <pre>
+     * try (QueryResult result = query.open()) {
+     *     ResultSet set = result.getResultSet();
+     *     ...
+     * }
+     * </pre>
+     * @return  The result of the query.
+     */
+    QueryResult open()
+    {
+        return open(0);
+    }
+
+    /**
+     * Executes the query and returns its open result.
+     * @param fetchSize The number of rows the driver fetches at once, 0 for the default of the driver.
+     * @return  The result of the query.
+     * @see #open()
+     */
+    QueryResult open(int fetchSize)
+    {
+        Connection connection = getConnection();
+        if (connection == null && Transaction.current() != null)
+            connection = Transaction.current().getConnection();
+        // Whether the result borrowed the connection and has to return it when closed.
+        boolean owned = connection == null;
+        PreparedStatement statement = null;
         try {
-            PreparedStatement statement = getConnection().prepareStatement(toSql());
+            if (owned)
+                connection = ConnectionManager.getConnection();
+            statement = connection.prepareStatement(toSql());
+            bind(statement);
+            statement.setFetchSize(fetchSize);
+            statement.execute();
+            reset();
+            return new QueryResult(statement.getResultSet(), statement, owned ? connection : null);
+        } catch (SQLException | DBException e) {
+            reset();
+            new QueryResult(null, statement, owned ? connection : null).close();
+            throw new UncheckedSQLException(e instanceof SQLException ? (SQLException) e : new SQLException(e.getMessage(), e));
+        }
+    }
+
+    public void execute()
+    {
+        release();
+        try (PreparedStatement statement = acquireConnection().prepareStatement(toSql())) {
+            bind(statement);
             statement.execute();
             reset();
-            return statement.getResultSet();
         } catch (SQLException e) {
+            e.printStackTrace();
             throw new UncheckedSQLException(e);
+        } finally {
+            release();
         }
     }
 
-    public void execute()
+    /**
+     * Executes the query, an INSERT, and returns the keys generated by the database in the same round-trip.
+     * @return  The generated keys, in the order of the inserted rows. Empty when the table generates none.
+     */
+    ArrayList<Object> executeReturningKeys()
     {
-        try {
-            getConnection().prepareStatement(toSql()).execute();
+        release();
+        ArrayList<Object> keys = new ArrayList<>();
+        try (PreparedStatement statement = acquireConnection().prepareStatement(toSql(), Statement.RETURN_GENERATED_KEYS)) {
+            bind(statement);
+            statement.executeUpdate();
             reset();
+            try (ResultSet generated = statement.getGeneratedKeys()) {
+                while (generated.next())
+                    keys.add(generated.getObject(1));
+            }
+            return keys;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UncheckedSQLException(e);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Inserts all rows with multi-row INSERT statements of at most batchSize rows each, all on one connection.
+     * Every row must contain the same columns. <br />
+     * Multi-row VALUES lists are supported by MySQL, the only dialect this application targets.
+     * @param rows      The rows to insert, where the keys represent the column names.
+     * @param batchSize The maximum number of rows per statement.
+     * @return  The keys generated by the database, in the order of the rows. Empty when the table does not
+     * generate keys.
+     */
+    ArrayList<Object> insertAll(List<? extends Map<String, String>> rows, int batchSize)
+    {
+        ArrayList<Object> keys = new ArrayList<>();
+        if (rows.isEmpty())
+            return keys;
+
+        release();
+        ArrayList<String> columns = new ArrayList<>(rows.get(0).keySet());
+        try {
+            Connection connection = acquireConnection();
+            for (int from = 0; from < rows.size(); from += batchSize)
+            {
+                List<? extends Map<String, String>> batch = rows.subList(from, Math.min(rows.size(), from + batchSize));
+                try (PreparedStatement statement = connection.prepareStatement(
+                        insertAllSql(columns, batch.size()), Statement.RETURN_GENERATED_KEYS))
+                {
+                    int i = 1;
+                    for (Map<String, String> row : batch)
+                        for (String column : columns)
+                            bind(statement, i++, row.get(column));
+                    statement.executeUpdate();
+                    try (ResultSet generated = statement.getGeneratedKeys()) {
+                        while (generated.next())
+                            keys.add(generated.getObject(1));
+                    }
+                }
+            }
+            return keys;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new UncheckedSQLException(e);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Updates all rows with one batched UPDATE statement, executed every batchSize rows, all on one connection.
+     * Every row must contain the same columns, which are all overwritten. The values of the key columns
+     * identifying the row to update are given separately, so a row can be updated to other key values.
+     * @param rows          The rows to update, where the keys represent the column names.
+     * @param keyColumns    The columns identifying a row.
+     * @param keys          The values of the key columns identifying every row, in the order of the rows.
+     * @param batchSize     The maximum number of rows per batch.
+     */
+    void updateAll(List<? extends Map<String, String>> rows, List<String> keyColumns,
+                   List<? extends Map<String, String>> keys, int batchSize)
+    {
+        if (rows.isEmpty())
+            return;
+
+        release();
+        ArrayList<String> columns = new ArrayList<>(rows.get(0).keySet());
+        try (PreparedStatement statement = acquireConnection().prepareStatement(updateAllSql(columns, keyColumns)))
+        {
+            int pending = 0;
+            for (int r = 0; r < rows.size(); ++r)
+            {
+                int i = 1;
+                for (String column : columns)
+                    bind(statement, i++, rows.get(r).get(column));
+                for (String column : keyColumns)
+                    bind(statement, i++, keys.get(r).get(column));
+                statement.addBatch();
+                if (++pending == batchSize)
+                {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending != 0)
+                statement.executeBatch();
         } catch (SQLException e) {
             e.printStackTrace();
             throw new UncheckedSQLException(e);
+        } finally {
+            release();
+        }
+    }
+
+    private String insertAllSql(List<String> columns, int rows)
+    {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(getTable()).append(" (");
+        sql.append(String.join(", ", columns)).append(") VALUES ");
+        StringJoiner row = new StringJoiner(", ", "(", ")");
+        for (int i = 0; i < columns.size(); ++i)
+            row.add("?");
+        StringJoiner values = new StringJoiner(", ");
+        for (int i = 0; i < rows; ++i)
+            values.add(row.toString());
+        return sql.append(values).toString();
+    }
+
+    private String updateAllSql(List<String> columns, List<String> keyColumns)
+    {
+        StringJoiner set = new StringJoiner(", ", "UPDATE " + getTable() + " SET ", "");
+        for (String x : columns)
+            set.add(x + " = ?");
+        StringJoiner where = new StringJoiner(" AND ", " WHERE ", "");
+        for (String x : keyColumns)
+            where.add(x + " = ?");
+        return set.toString() + where.toString();
+    }
+
+    /**
+     * Executes the query and returns its rows lazily with the default fetch size.
+     * @return  The rows of the query.
+     * @see #stream(int)
+     */
+    @Override
+    public Stream<ResultSet> stream()
+    {
+        return stream(getDefaultFetchSize());
+    }
+
+    /**
+     * Returns the fetch size used by stream when none is given, query.fetchSize in DB.properties.
+     * @return  The fetch size.
+     */
+    static int getDefaultFetchSize()
+    {
+        return DBProp.getQueryFetchSize();
+    }
+
+    /**
+     * Executes the query and returns its rows lazily, reading them from a forward-only ResultSet as the
+     * stream is consumed. Every element is the same ResultSet, positioned at the current row, so it should
+     * be converted before advancing. <br />
+     * The stream keeps its own statement and connection, independent of the next query of this builder.
+     * They are released as soon as the last row has been read, but a stream that is not consumed completely
+     * <b>must</b> be closed, preferably with a try-with-resources block. <br />
+     * Within a Transaction the stream shares the connection of the transaction. A negative fetch size, which
+     * makes MySQL stream row by row, is refused there, as it would block every other query of the transaction
+     * until the stream is closed.
+     * @param fetchSize The number of rows the driver fetches at once.
+     * @return  The rows of the query.
+     * @throws IllegalStateException Thrown for a negative fetch size within a Transaction.
+     */
+    Stream<ResultSet> stream(int fetchSize)
+    {
+        if (fetchSize < 0 && Transaction.current() != null)
+            throw new IllegalStateException("Row by row streaming would block the connection of the transaction.");
+        Cursor cursor = new Cursor(open(fetchSize));
+        return StreamSupport.stream(cursor, false).onClose(cursor.result::close);
+    }
+
+    /**
+     * A forward-only walk over an open result, which is closed once the last row has been passed.
+     */
+    private static class Cursor extends Spliterators.AbstractSpliterator<ResultSet>
+    {
+        private final QueryResult result;
+
+        Cursor(QueryResult result)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.result = result;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super ResultSet> action)
+        {
+            if (result.isClosed())
+                return false;
+            try {
+                if (!result.getResultSet().next())
+                {
+                    result.close();
+                    return false;
+                }
+                action.accept(result.getResultSet());
+                return true;
+            } catch (SQLException e) {
+                result.close();
+                throw new UncheckedSQLException(e);
+            }
+        }
+    }
+
+    /**
+     * Closes the statement of the last query and returns the borrowed connection to the pool.
+     * Has no effect when the QueryBuilder was constructed with its own connection, apart from closing the statement.
+     */
+    void release()
+    {
+        if (current != null)
+            current.close();
+        current = null;
+        try {
+            if (borrowed != null)
+                borrowed.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            borrowed = null;
+        }
+    }
+
+    /**
+     * Binds the parameters collected by the last call to toSql to the placeholders of the statement.
+     * @param statement The statement prepared with the last generated SQL.
+     * @throws SQLException Thrown when a parameter cannot be bound.
+     */
+    private void bind(PreparedStatement statement) throws SQLException
+    {
+        for (int i = 0; i < getParameters().size(); ++i)
+            bind(statement, i + 1, getParameters().get(i));
+    }
+
+    private static void bind(PreparedStatement statement, int index, Object value) throws SQLException
+    {
+        if (value == null)
+            statement.setNull(index, Types.NULL);
+        else if (value instanceof String)
+            statement.setString(index, (String) value);
+        else
+            statement.setObject(index, value);
+    }
+
+    /**
+     * Returns the connection to run the next query on: the connection of this builder, else the one of the
+     * active Transaction, else one borrowed from the pool.
+     * @return  The connection.
+     */
+    private Connection acquireConnection()
+    {
+        if (getConnection() != null)
+            return getConnection();
+        if (Transaction.current() != null)
+            return Transaction.current().getConnection();
+        try {
+            borrowed = ConnectionManager.getConnection();
+            return borrowed;
+        } catch (DBException e) {
+            throw new UncheckedSQLException(new SQLException(e.getMessage(), e));
         }
     }
 
@@ -241,16 +674,224 @@ class QueryBuilder implements QueryAble
     }
 
     /**
-     * Resets the Query in order to have a fresh start.
+     * Resets the Query in order to have a fresh start. The collections are cleared instead of replaced, so a
+     * builder that is reused for many queries does not allocate new ones every time.
      */
     public void reset()
     {
-        selections = new LinkedHashSet<>();
-        modifiers = new HashMap<>();
-        comparisons = new ArrayList<>();
+        getSelections().clear();
+        getModifierColumns().clear();
+        getModifierValues().clear();
+        getComparisons().clear();
+        orderColumns.clear();
+        orderDescending.clear();
+        groupColumns.clear();
+        limit = -1;
+        offset = -1;
+        forUpdate = false;
         setQueryMode(QueryMode.UNDECIDED);
     }
 
+    /**
+     * Orders the results of a SELECT by the given column, ascending. Every call adds a column with a lower
+     * precedence than the ones before.
+     * @param column    The column to order by.
+     * @return  The this pointer.
+     */
+    @Override
+    public QueryBuilder orderBy(String column)
+    {
+        orderColumns.add(column);
+        orderDescending.add(Boolean.FALSE);
+        return this;
+    }
+
+    /**
+     * Orders the results of a SELECT by the given column, descending.
+     * @param column    The column to order by.
+     * @return  The this pointer.
+     * @see #orderBy(String)
+     */
+    @Override
+    public QueryBuilder orderByDescending(String column)
+    {
+        orderColumns.add(column);
+        orderDescending.add(Boolean.TRUE);
+        return this;
+    }
+
+    /**
+     * Returns at most the given number of rows of a SELECT.
+     * @param count The maximum number of rows.
+     * @return  The this pointer.
+     */
+    @Override
+    public QueryBuilder limit(int count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("The limit cannot be negative.");
+        limit = count;
+        return this;
+    }
+
+    /**
+     * Skips the given number of rows of a SELECT. Skipped rows are still read by the database, so for deep
+     * pages keyset pagination through Model.page is preferred.
+     * @param count The number of rows to skip.
+     * @return  The this pointer.
+     */
+    @Override
+    public QueryBuilder offset(int count)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("The offset cannot be negative.");
+        offset = count;
+        return this;
+    }
+
+    /**
+     * Locks the rows selected by a SELECT until the end of the transaction, so other transactions can not
+     * change them or lock them in turn. A locking read always sees the latest committed rows. It only has an
+     * effect within a Transaction, in autocommit mode the locks are released right after the query.
+     * @return  The this pointer.
+     */
+    @Override
+    public QueryBuilder forUpdate()
+    {
+        forUpdate = true;
+        return this;
+    }
+
+    /**
+     * Groups the results of a SELECT by the given column. The selection should then only contain grouped
+     * columns and aggregates, e.g. select(new String[]{"lidRijksregisternummer", "COUNT(*)"}).
+     * @param column    The column to group by.
+     * @return  The this pointer.
+     */
+    @Override
+    public QueryBuilder groupBy(String column)
+    {
+        if (!groupColumns.contains(column))
+            groupColumns.add(column);
+        return this;
+    }
+
+    /**
+     * Counts the rows matching the comparisons, reading a single row instead of the rows themselves.
+     * @return  The number of rows.
+     */
+    @Override
+    public long count()
+    {
+        return ((Number) aggregate("COUNT(*)")).longValue();
+    }
+
+    /**
+     * Returns whether any row matches the comparisons. The database can stop at the first match.
+     * @return  True if at least one row matches.
+     */
+    @Override
+    public boolean exists()
+    {
+        return aggregate("1", 1) != null;
+    }
+
+    /**
+     * Returns the lowest value of a column among the rows matching the comparisons.
+     * @param column    The column.
+     * @return  The lowest value, of the type the driver returns for the column, or null if no row matches.
+     */
+    @Override
+    public Object min(String column)
+    {
+        return aggregate("MIN(" + column + ')');
+    }
+
+    /**
+     * Returns the highest value of a column among the rows matching the comparisons.
+     * @param column    The column.
+     * @return  The highest value, of the type the driver returns for the column, or null if no row matches.
+     */
+    @Override
+    public Object max(String column)
+    {
+        return aggregate("MAX(" + column + ')');
+    }
+
+    /**
+     * Returns the sum of a column over the rows matching the comparisons.
+     * @param column    The column.
+     * @return  The sum, of the type the driver returns for the sum, or null if no row matches.
+     */
+    @Override
+    public Number sum(String column)
+    {
+        return (Number) aggregate("SUM(" + column + ')');
+    }
+
+    private Object aggregate(String expression)
+    {
+        return aggregate(expression, -1);
+    }
+
+    /**
+     * Executes the query with the given expression as its only selection and returns the value of the first
+     * row. The selection, ordering and offset of the query are replaced, as they are meaningless for a
+     * single aggregate.
+     * @param expression    The expression to select.
+     * @param limit         The maximum number of rows the database has to produce, -1 for no limit.
+     * @return  The value or null if there is no row or the value is NULL.
+     */
+    private Object aggregate(String expression, int limit)
+    {
+        if (getQueryMode() != QueryMode.SELECT && getQueryMode() != QueryMode.UNDECIDED)
+            throw new RuntimeException();
+        if (!groupColumns.isEmpty())
+            throw new IllegalStateException("Grouped aggregates return a row per group, use select and get instead.");
+        setQueryMode(QueryMode.SELECT);
+        getSelections().clear();
+        getSelections().add(expression);
+        orderColumns.clear();
+        orderDescending.clear();
+        this.limit = limit;
+        offset = -1;
+        try (QueryResult result = open()) {
+            ResultSet set = result.getResultSet();
+            return set.next() ? set.getObject(1) : null;
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    /**
+     * Returns whether nothing has been added to the query since it was constructed or last reset.
+     * @return  True if the query is empty.
+     */
+    boolean isEmpty()
+    {
+        return isUndecided() && getSelections().isEmpty() && getComparisons().isEmpty() &&
+                getModifierColumns().isEmpty() && orderColumns.isEmpty() && groupColumns.isEmpty() &&
+                limit == -1 && offset == -1 && !forUpdate;
+    }
+
+    /**
+     * Returns whether no mode has been chosen yet, i.e. nothing has been selected, inserted, updated or deleted.
+     * @return  True if the query is undecided.
+     */
+    boolean isUndecided()
+    {
+        return getQueryMode() == QueryMode.UNDECIDED;
+    }
+
+    /**
+     * Returns whether the results are ordered by any column.
+     * @return  True if orderBy or orderByDescending was called.
+     */
+    boolean isOrdered()
+    {
+        return !orderColumns.isEmpty();
+    }
+
     /**
      * Insert new values into a column where the keys represent the column names and the values represent
      * the values in the persistent storage.
@@ -268,7 +909,7 @@ class QueryBuilder implements QueryAble
         if (getQueryMode() == QueryMode.INSERT || getQueryMode() == QueryMode.UPDATE)
         {
             for (Map.Entry<String, String> x : columnValues.entrySet())
-                getModifiers().put(x.getKey(), x.getValue());
+                putModifier(x.getKey(), x.getValue());
             return this;
         }
         else
@@ -292,7 +933,7 @@ class QueryBuilder implements QueryAble
             setQueryMode(QueryMode.INSERT);
         if (getQueryMode() == QueryMode.INSERT || getQueryMode() == QueryMode.UPDATE)
         {
-            getModifiers().put(column, value);
+            putModifier(column, value);
             return this;
         }
         else
@@ -353,11 +994,26 @@ class QueryBuilder implements QueryAble
      * @note this method is protected because Models need access to selections in order to ALWAYS be able to select primary keys.
      */
     
-    private HashSet<String> getSelections()
+    private ArrayList<String> getSelections()
     {
         return selections;
     }
 
+    /**
+     * Returns the columns selected so far, in order.
+     * @return  A read-only view of the selections.
+     */
+    List<String> getSelectedColumns()
+    {
+        return Collections.unmodifiableList(getSelections());
+    }
+
+    private void addSelection(String selection)
+    {
+        if (!getSelections().contains(selection))
+            getSelections().add(selection);
+    }
+
 
     /**
      * Returns the connection.
@@ -416,9 +1072,41 @@ class QueryBuilder implements QueryAble
     }
 
     
-    private HashMap<String, String> getModifiers()
+    private ArrayList<String> getModifierColumns()
+    {
+        return modifierColumns;
+    }
+
+    private ArrayList<String> getModifierValues()
+    {
+        return modifierValues;
+    }
+
+    /**
+     * Sets the value of a column to be modified, overwriting the value given before for the same column.
+     * @param column    The column.
+     * @param value     The value.
+     */
+    private void putModifier(String column, String value)
+    {
+        int index = getModifierColumns().indexOf(column);
+        if (index < 0)
+        {
+            getModifierColumns().add(column);
+            getModifierValues().add(value);
+        }
+        else
+            getModifierValues().set(index, value);
+    }
+
+    /**
+     * Returns the values bound to the placeholders of the last generated SQL, in order.
+     *
+     * @return parameters
+     */
+    ArrayList<Object> getParameters()
     {
-        return modifiers;
+        return parameters;
     }
 
     @Override
@@ -431,17 +1119,28 @@ class QueryBuilder implements QueryAble
         return getTable().equals(that.getTable()) &&
                 getSelections().equals(that.getSelections()) &&
                 getComparisons().equals(that.getComparisons()) &&
-                getModifiers().equals(that.getModifiers()) &&
+                getModifierColumns().equals(that.getModifierColumns()) &&
+                getModifierValues().equals(that.getModifierValues()) &&
+                orderColumns.equals(that.orderColumns) &&
+                orderDescending.equals(that.orderDescending) &&
+                groupColumns.equals(that.groupColumns) &&
+                limit == that.limit && offset == that.offset && forUpdate == that.forUpdate &&
                 getQueryMode() == that.getQueryMode();
     }
 
     @Override
     public int hashCode() {
-        int result = getConnection().hashCode();
-        result = 31 * result + getTable().hashCode();
+        int result = getTable().hashCode();
         result = 31 * result + getSelections().hashCode();
         result = 31 * result + getComparisons().hashCode();
-        result = 31 * result + getModifiers().hashCode();
+        result = 31 * result + getModifierColumns().hashCode();
+        result = 31 * result + getModifierValues().hashCode();
+        result = 31 * result + orderColumns.hashCode();
+        result = 31 * result + orderDescending.hashCode();
+        result = 31 * result + groupColumns.hashCode();
+        result = 31 * result + limit;
+        result = 31 * result + offset;
+        result = 31 * result + (forUpdate ? 1 : 0);
         result = 31 * result + getQueryMode().hashCode();
         return result;
     }
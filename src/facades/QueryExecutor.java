@@ -0,0 +1,100 @@
+package facades;
+
+import database.connect.DBProp;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs queries off the calling thread for the asynchronous methods of QueryAble and Model. <br />
+ * At most as many queries run at the same time as the connection pool hands out connections, so
+ * asynchronous queries queue here instead of timing out while waiting for the pool. On a Java 21 runtime
+ * every query gets its own virtual thread and the limit is enforced by a semaphore; on older runtimes a
+ * fixed pool of daemon threads of that size runs them. <br />
+ * Queries run on another thread, so they do not take part in the Transaction or UnitOfWork of the caller.
+ */
+final class QueryExecutor
+{
+    // The executor all asynchronous queries run on, created on first use.
+    private static volatile Executor executor;
+
+    private QueryExecutor()
+    {
+    }
+
+    /**
+     * Runs the work asynchronously.
+     * @param work  The work.
+     * @param <R>   The type of the result.
+     * @return  The future result of the work, completed exceptionally when the work throws.
+     */
+    static <R> CompletableFuture<R> supply(Supplier<R> work)
+    {
+        return CompletableFuture.supplyAsync(work, getExecutor());
+    }
+
+    /**
+     * Runs the work asynchronously.
+     * @param work  The work.
+     * @return  The future completion of the work, completed exceptionally when the work throws.
+     */
+    static CompletableFuture<Void> run(Runnable work)
+    {
+        return CompletableFuture.runAsync(work, getExecutor());
+    }
+
+    private static Executor getExecutor()
+    {
+        if (executor == null) {
+            synchronized (QueryExecutor.class) {
+                if (executor == null)
+                    executor = create(DBProp.getPoolMaximum(), virtualThreadPerTaskExecutor());
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Creates an executor running at most the given number of tasks at the same time.
+     * @param limit     The maximum number of tasks running at the same time.
+     * @param virtual   The executor starting a thread per task, or null to use a fixed pool of threads.
+     * @return  The executor.
+     */
+    static Executor create(int limit, ExecutorService virtual)
+    {
+        if (virtual == null)
+            return Executors.newFixedThreadPool(limit, runnable -> {
+                Thread thread = new Thread(runnable, "query-executor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        Semaphore inFlight = new Semaphore(limit, true);
+        return command -> virtual.execute(() -> {
+            inFlight.acquireUninterruptibly();
+            try {
+                command.run();
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    /**
+     * Looks up the virtual thread executor by reflection, as the application is built for Java 8.
+     * @return  The executor or null if the runtime has no virtual threads.
+     */
+    private static ExecutorService virtualThreadPerTaskExecutor()
+    {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
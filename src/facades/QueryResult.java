@@ -0,0 +1,64 @@
+package facades;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The open result of a query together with everything it holds on to: the ResultSet, the statement it was
+ * produced by and, when the query borrowed one, the connection. <br />
+ * Closing the result releases all of them in reverse order, so a query run in a try-with-resources block
+ * never leaves a server-side cursor behind. Closing it more than once has no effect.
+ */
+final class QueryResult implements AutoCloseable
+{
+    private final ResultSet results;
+    private final Statement statement;
+    // The connection borrowed for this result, null when it belongs to someone else.
+    private final Connection connection;
+    private boolean closed = false;
+
+    QueryResult(ResultSet results, Statement statement, Connection connection)
+    {
+        this.results = results;
+        this.statement = statement;
+        this.connection = connection;
+    }
+
+    ResultSet getResultSet()
+    {
+        return results;
+    }
+
+    boolean isClosed()
+    {
+        return closed;
+    }
+
+    @Override
+    public void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (results != null)
+                results.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (statement != null)
+                statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (connection != null)
+                connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package facades;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Everything that determines the SQL of a query apart from its values: the table, the mode, the columns and
+ * the structure of the conditions. Queries of the same shape share the same SQL, so the shape is the key
+ * of the SQL templates of QueryBuilder. <br />
+ * A builder keeps one shape that it overwrites for every query, so looking up a template does not allocate.
+ * Only a copy is ever stored as a key.
+ */
+final class QueryShape
+{
+    private String table;
+    private Object mode;
+    // The parts describing the query, in the order they were added.
+    private Object[] parts;
+    private int size;
+    private int hash;
+
+    QueryShape()
+    {
+        parts = new Object[16];
+    }
+
+    /**
+     * Starts describing a new query.
+     * @param table The table of the query.
+     * @param mode  The mode of the query.
+     */
+    void reset(String table, Object mode)
+    {
+        this.table = table;
+        this.mode = mode;
+        size = 0;
+        hash = 31 * table.hashCode() + mode.hashCode();
+    }
+
+    /**
+     * Adds a part to the description. Parts must be immutable, e.g. column names, operators or counts.
+     * @param part  The part.
+     */
+    void add(Object part)
+    {
+        if (size == parts.length)
+            parts = Arrays.copyOf(parts, size * 2);
+        parts[size++] = part;
+        hash = 31 * hash + Objects.hashCode(part);
+    }
+
+    /**
+     * Returns a copy of this shape that is not affected by describing the next query.
+     * @return  The copy.
+     */
+    QueryShape copy()
+    {
+        QueryShape copy = new QueryShape();
+        copy.table = table;
+        copy.mode = mode;
+        copy.parts = Arrays.copyOf(parts, size);
+        copy.size = size;
+        copy.hash = hash;
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof QueryShape)) return false;
+
+        QueryShape that = (QueryShape) o;
+        if (hash != that.hash || size != that.size || mode != that.mode || !table.equals(that.table))
+            return false;
+        for (int i = 0; i < size; ++i)
+        {
+            if (!Objects.equals(parts[i], that.parts[i]))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+}
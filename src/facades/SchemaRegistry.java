@@ -0,0 +1,312 @@
+package facades;
+
+import database.connect.ConnectionManager;
+import database.connect.DBProp;
+import exception.DBException;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of the inspected schema of every Model class, shared by all threads. <br />
+ * The schema of a class is inspected the first time a model of that class is constructed and is never
+ * modified after it has been published. The inspection runs outside of the registry, so a slow database never
+ * blocks the construction of models of other classes; concurrent first constructions of the same class may
+ * each inspect the table, after which all of them use the schema published first. <br />
+ * Within a Transaction the table is inspected on the connection of the transaction, which would otherwise
+ * wait for a second connection of the pool while holding one. <br />
+ * Inspection only reads the catalog through DatabaseMetaData and never the rows of the table. When a schema
+ * snapshot is configured (see SchemaSnapshot), tables found in it are not inspected at all.
+ */
+final class SchemaRegistry
+{
+    // A simple mapping between the database representation and the resulting set.
+    // Integer is needed as the Types class in java.sql are not enum class.
+    // This is used to force strict typing in the values it accepts for each individual
+    // field of the model.
+    private static final Map<Integer, Class<?>> dBToField;
+    // A simple mapping to produce a handler for every single type the Model accepts and
+    // be able to 'pull' it from the ResultSet.
+    private static final Map<Class<?>, HydrationPlan.ColumnReader> fieldToFunction;
+    // The inspected schema of every Model class.
+    private static final ConcurrentHashMap<Class<?>, TableSchema> schemas = new ConcurrentHashMap<>();
+
+    static
+    {
+        HashMap<Integer, Class<?>> types = new HashMap<>();
+        types.put(Types.CHAR, String.class);
+        types.put(Types.ARRAY, Object[].class);
+        types.put(Types.VARCHAR, String.class);
+        types.put(Types.BINARY, Object.class);
+        types.put(Types.BIT, Object.class);
+        types.put(Types.BLOB, Object.class);
+        types.put(Types.LONGNVARCHAR, String.class);
+        types.put(Types.LONGVARBINARY, Object.class);
+        types.put(Types.LONGVARCHAR, String.class);
+        types.put(Types.TINYINT, Integer.class);
+        types.put(Types.SMALLINT, Integer.class);
+        types.put(Types.INTEGER, Integer.class);
+        types.put(Types.BIGINT, BigDecimal.class);
+        types.put(Types.FLOAT, Float.class);
+        types.put(Types.DOUBLE, Double.class);
+        types.put(Types.DECIMAL, BigDecimal.class);
+        types.put(Types.DATE, Date.class);
+        types.put(Types.TIMESTAMP, Timestamp.class);
+        types.put(Types.TIME, Time.class);
+        dBToField = Collections.unmodifiableMap(types);
+
+        // Columns are read by index, the HydrationPlan resolves the index of every column once per ResultSet.
+        // The primitive getters return 0 for SQL NULL, so wasNull is needed to keep NULL a null. Primitive
+        // values are written into the FieldData unboxed.
+        HashMap<Class<?>, HydrationPlan.ColumnReader> readers = new HashMap<>();
+        readers.put(String.class, (set_, column_, target_, position_) ->
+                target_.loadObject(position_, set_.getString(column_)));
+        readers.put(Integer.class, (set_, column_, target_, position_) -> {
+            int value = set_.getInt(column_);
+            if (set_.wasNull())
+                target_.loadNull(position_);
+            else
+                target_.loadInt(position_, value);
+        });
+        readers.put(BigDecimal.class, (set_, column_, target_, position_) ->
+                target_.loadObject(position_, set_.getBigDecimal(column_)));
+        readers.put(Float.class, (set_, column_, target_, position_) -> {
+            float value = set_.getFloat(column_);
+            if (set_.wasNull())
+                target_.loadNull(position_);
+            else
+                target_.loadFloat(position_, value);
+        });
+        readers.put(Double.class, (set_, column_, target_, position_) -> {
+            double value = set_.getDouble(column_);
+            if (set_.wasNull())
+                target_.loadNull(position_);
+            else
+                target_.loadDouble(position_, value);
+        });
+        readers.put(Date.class, (set_, column_, target_, position_) ->
+                target_.loadObject(position_, set_.getDate(column_)));
+        readers.put(Timestamp.class, (set_, column_, target_, position_) ->
+                target_.loadObject(position_, set_.getTimestamp(column_)));
+        readers.put(Time.class, (set_, column_, target_, position_) ->
+                target_.loadObject(position_, set_.getTime(column_)));
+        readers.put(Object.class, (set_, column_, target_, position_) ->
+                target_.loadObject(position_, set_.getObject(column_)));
+        fieldToFunction = Collections.unmodifiableMap(readers);
+    }
+
+    private SchemaRegistry()
+    {
+    }
+
+    /**
+     * The result of inspecting the table of a Model class, immutable apart from the projection plans it
+     * compiles on demand.
+     */
+    static final class TableSchema
+    {
+        // The name of the table.
+        private final String table;
+        // The layout of the inspected fields, shared by the fields of every model.
+        private final FieldLayout layout;
+        // The names of the primary keys.
+        private final List<String> primaryKeys;
+        // The compiled conversion from a row to the fields.
+        private final HydrationPlan plan;
+        // The second level cache of the table, null when it is disabled.
+        private final SecondLevelCache cache;
+        // The compiled plans of the projections used so far, by their selected columns.
+        private final ConcurrentHashMap<List<String>, HydrationPlan> projections = new ConcurrentHashMap<>();
+
+        private TableSchema(String table, FieldLayout layout, List<String> primaryKeys)
+        {
+            this.table = table;
+            this.layout = layout;
+            this.primaryKeys = Collections.unmodifiableList(primaryKeys);
+            this.plan = new HydrationPlan(layout, fieldToFunction);
+            int cacheSize = DBProp.getCacheSize(table);
+            this.cache = cacheSize > 0 ? new SecondLevelCache(cacheSize, DBProp.getCacheTimeToLive(table)) : null;
+        }
+
+        String getTable()
+        {
+            return table;
+        }
+
+        /**
+         * Returns a fresh store for the inspected fields, with every field NULL.
+         * @return  The fields.
+         */
+        FieldData newFields()
+        {
+            return new FieldData(layout);
+        }
+
+        FieldLayout getLayout()
+        {
+            return layout;
+        }
+
+        List<String> getPrimaryKeys()
+        {
+            return primaryKeys;
+        }
+
+        HydrationPlan getPlan()
+        {
+            return plan;
+        }
+
+        /**
+         * Returns the plan to read only the given columns, compiling it the first time.
+         * @param columns   The selected columns, all of them when empty or "*".
+         * @return  The plan.
+         */
+        HydrationPlan getProjection(List<String> columns)
+        {
+            if (columns.isEmpty() || columns.contains("*"))
+                return plan;
+            HydrationPlan projection = projections.get(columns);
+            if (projection == null)
+            {
+                List<String> key = Collections.unmodifiableList(new ArrayList<>(columns));
+                projection = new HydrationPlan(layout.project(key), fieldToFunction);
+                HydrationPlan known = projections.putIfAbsent(key, projection);
+                if (known != null)
+                    projection = known;
+            }
+            return projection;
+        }
+
+        SecondLevelCache getCache()
+        {
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the schema of the given Model class, inspecting its table the first time.
+     * @param class_    The Model class.
+     * @param table     The table the class is connected to.
+     * @return  The schema.
+     */
+    static TableSchema get(Class<?> class_, String table)
+    {
+        TableSchema schema = schemas.get(class_);
+        if (schema != null)
+            return schema;
+        schema = inspect(table);
+        TableSchema published = schemas.putIfAbsent(class_, schema);
+        return published != null ? published : schema;
+    }
+
+    /**
+     * Returns the schema of the given Model class if it has been inspected already.
+     * @param class_    The Model class.
+     * @return  The schema or null.
+     */
+    static TableSchema lookup(Class<?> class_)
+    {
+        return schemas.get(class_);
+    }
+
+    /**
+     * Queries the database for the columns and primary keys of the table.
+     * @param table The table to inspect.
+     * @return  The schema of the table.
+     */
+    private static TableSchema inspect(String table)
+    {
+        SchemaSnapshot snapshot = SnapshotHolder.SNAPSHOT;
+        if (snapshot.contains(table))
+            return new TableSchema(table, allocateFields(snapshot.getColumns(table)), snapshot.getPrimaryKeys(table));
+
+        try (Connection connection = Transaction.current() != null ? Transaction.current().share() :
+                ConnectionManager.getConnection())
+        {
+            return new TableSchema(table, allocateFields(inspectColumns(connection, table)),
+                    inspectPrimaryKeys(connection, table));
+        }
+        catch (DBException | SQLException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Allocates all columns with their respective runtime types.
+     * @param columns   The columns and their java.sql.Types, in column order.
+     * @return  The layout of the fields.
+     */
+    private static FieldLayout allocateFields(Map<String, Integer> columns)
+    {
+        LinkedHashMap<String, Class<?>> fields = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> x : columns.entrySet())
+            // Put the name of the column with a run time type checkable type.
+            fields.put(x.getKey(), dBToField.getOrDefault(x.getValue(), Object.class));
+        return new FieldLayout(fields);
+    }
+
+    /**
+     * Reads the columns of the table and their types from the catalog. Falls back on the metadata of a query
+     * that matches no rows when the driver reports no columns, e.g. because of the case of the table name.
+     * @param connection    The connection to inspect through.
+     * @param table         The table to inspect.
+     * @return  The columns and their java.sql.Types, in column order.
+     * @throws SQLException Thrown by the connection.
+     */
+    static LinkedHashMap<String, Integer> inspectColumns(Connection connection, String table) throws SQLException
+    {
+        LinkedHashMap<String, Integer> columns = new LinkedHashMap<>();
+        try (ResultSet results = connection.getMetaData().getColumns(connection.getCatalog(), null, table, "%"))
+        {
+            while (results.next())
+                columns.put(results.getString("COLUMN_NAME"), results.getInt("DATA_TYPE"));
+        }
+        if (!columns.isEmpty())
+            return columns;
+
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM " + table + " WHERE 1 = 0");
+             ResultSet results = statement.executeQuery())
+        {
+            ResultSetMetaData meta = results.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); ++i) //index starts at one...
+                columns.put(meta.getColumnName(i), meta.getColumnType(i));
+        }
+        return columns;
+    }
+
+    /**
+     * Reads the names of the primary keys of the table from the catalog.
+     * @param connection    The connection to inspect through.
+     * @param table         The table to inspect.
+     * @return  The primary keys, in key order.
+     * @throws SQLException Thrown by the connection.
+     */
+    static ArrayList<String> inspectPrimaryKeys(Connection connection, String table) throws SQLException
+    {
+        TreeMap<Short, String> keys = new TreeMap<>();
+        try (ResultSet results = connection.getMetaData().getPrimaryKeys(connection.getCatalog(), null, table))
+        {
+            while (results.next())
+                keys.put(results.getShort("KEY_SEQ"), results.getString("COLUMN_NAME"));
+        }
+        return new ArrayList<>(keys.values());
+    }
+
+    /**
+     * Loads the configured schema snapshot the first time it is needed.
+     */
+    private static class SnapshotHolder
+    {
+        static final SchemaSnapshot SNAPSHOT = SchemaSnapshot.loadConfigured();
+    }
+}
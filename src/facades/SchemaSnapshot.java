@@ -0,0 +1,157 @@
+package facades;
+
+import database.connect.ConnectionManager;
+import database.connect.DBProp;
+import exception.DBException;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.JDBCType;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.StringJoiner;
+
+/**
+ * A precomputed copy of the schema of a set of tables, stored in a properties file, so that models can be
+ * constructed without inspecting the database at all. <br />
+ * The snapshot is used when the key schemaSnapshot in DB.properties points to a file. Every table is
+ * described by two keys:
+ * <pre>
+ * Fiets.columns=registratienummer:INTEGER,standplaats:VARCHAR,status:VARCHAR,opmerkingen:VARCHAR
+ * Fiets.primaryKeys=registratienummer
+ * </pre>
+ * Such a file is generated from a live database with <code>java facades.SchemaSnapshot file table...</code>.
+ * Tables missing from the snapshot are still inspected at runtime, so an outdated snapshot only needs to
+ * be regenerated when the columns of a table it contains change.
+ */
+public final class SchemaSnapshot
+{
+    // The suffix of the keys describing the columns of a table.
+    private static final String COLUMNS = ".columns";
+    // The suffix of the keys describing the primary keys of a table.
+    private static final String PRIMARY_KEYS = ".primaryKeys";
+
+    // The columns and their java.sql.Types of every table, in column order.
+    private final HashMap<String, LinkedHashMap<String, Integer>> columns = new HashMap<>();
+    // The primary keys of every table, in key order.
+    private final HashMap<String, List<String>> primaryKeys = new HashMap<>();
+
+    private SchemaSnapshot()
+    {
+    }
+
+    /**
+     * Loads the snapshot configured in DB.properties. A missing or unreadable snapshot results in an empty one.
+     * @return  The snapshot.
+     */
+    static SchemaSnapshot loadConfigured()
+    {
+        String file = DBProp.getSchemaSnapshot();
+        if (file == null)
+            return new SchemaSnapshot();
+        try {
+            return load(file);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Schema snapshot " + file + " kon niet geladen worden: " + e.getMessage());
+            return new SchemaSnapshot();
+        }
+    }
+
+    /**
+     * Loads a snapshot from the given file.
+     * @param file  The path of the snapshot.
+     * @return  The snapshot.
+     * @throws IOException Thrown when the file cannot be read.
+     */
+    static SchemaSnapshot load(String file) throws IOException
+    {
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+
+        SchemaSnapshot snapshot = new SchemaSnapshot();
+        for (String key : properties.stringPropertyNames())
+        {
+            if (!key.endsWith(COLUMNS))
+                continue;
+            String table = key.substring(0, key.length() - COLUMNS.length());
+            LinkedHashMap<String, Integer> types = new LinkedHashMap<>();
+            for (String column : properties.getProperty(key).split(","))
+            {
+                String[] parts = column.trim().split(":");
+                types.put(parts[0], JDBCType.valueOf(parts[1]).getVendorTypeNumber());
+            }
+            snapshot.columns.put(table, types);
+            String keys = properties.getProperty(table + PRIMARY_KEYS, "").trim();
+            snapshot.primaryKeys.put(table, keys.isEmpty() ? Collections.<String>emptyList() :
+                    Arrays.asList(keys.split("\\s*,\\s*")));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Inspects the given tables through the database and writes their schema to a snapshot file.
+     * @param file      The path of the snapshot.
+     * @param tables    The tables to include.
+     * @throws DBException  Thrown when no connection could be made.
+     * @throws SQLException Thrown when the tables cannot be inspected.
+     * @throws IOException  Thrown when the file cannot be written.
+     */
+    public static void write(String file, String... tables) throws DBException, SQLException, IOException
+    {
+        Properties properties = new Properties();
+        try (Connection connection = ConnectionManager.getConnection())
+        {
+            for (String table : tables)
+            {
+                StringJoiner types = new StringJoiner(",");
+                for (Map.Entry<String, Integer> x : SchemaRegistry.inspectColumns(connection, table).entrySet())
+                    types.add(x.getKey() + ':' + JDBCType.valueOf(x.getValue()).getName());
+                properties.setProperty(table + COLUMNS, types.toString());
+                properties.setProperty(table + PRIMARY_KEYS,
+                        String.join(",", SchemaRegistry.inspectPrimaryKeys(connection, table)));
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "VIVESbike schema snapshot");
+        }
+    }
+
+    boolean contains(String table)
+    {
+        return columns.containsKey(table);
+    }
+
+    Map<String, Integer> getColumns(String table)
+    {
+        return columns.get(table);
+    }
+
+    List<String> getPrimaryKeys(String table)
+    {
+        return new ArrayList<>(primaryKeys.get(table));
+    }
+
+    /**
+     * Generates a snapshot file.
+     * @param args  The path of the snapshot followed by the tables to include.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2) {
+            System.out.println("Gebruik: SchemaSnapshot <bestand> <tabel>...");
+            return;
+        }
+        write(args[0], Arrays.copyOfRange(args, 1, args.length));
+    }
+}
@@ -0,0 +1,207 @@
+package facades;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, least recently used cache of rows of one table, shared by all threads and kept for the
+ * lifetime of the application. <br />
+ * Model.find reads through this cache when it is enabled for the table of the model. The cache holds the
+ * values of the fields, never model instances, so every find still produces its own model. Entries expire
+ * after a fixed time to live and are invalidated by update, store and delete. <br />
+ * The cache is enabled per table in DB.properties, for example:
+ * <pre>
+ * cache.Fiets.size=1000
+ * cache.Fiets.ttl=300000
+ * </pre>
+ * Only enable it for tables that are not modified behind the back of this application, as such
+ * modifications stay invisible until the entry expires. <br />
+ * A row read from the database may be outdated by the time it is put in the cache, when another thread
+ * invalidated it during the read. Readers therefore take a stamp before reading and the row is only put when
+ * it was not invalidated since that stamp.
+ */
+public final class SecondLevelCache
+{
+    // The maximum number of rows kept.
+    private final int capacity;
+    // The time in milliseconds a row is kept.
+    private final long timeToLive;
+    // The values of the rows by their identity, least recently used first.
+    private final LinkedHashMap<List<Object>, Row> rows;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    // Counts the invalidations, the stamp of an invalidation is the value after counting it.
+    private long clock;
+    // The stamp of the last invalidation of every recently invalidated row, oldest first.
+    private final LinkedHashMap<List<Object>, Long> invalidations;
+    // Every row was invalidated at or before this stamp if it is not in the invalidations anymore.
+    private long forgotten;
+
+    /**
+     * The values of a row together with the moment they expire.
+     */
+    private static class Row
+    {
+        final FieldData values;
+        final long expires;
+
+        Row(FieldData values, long expires)
+        {
+            this.values = values;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Constructs a new cache.
+     * @param capacity      The maximum number of rows kept.
+     * @param timeToLive    The time in milliseconds a row is kept.
+     */
+    SecondLevelCache(int capacity, long timeToLive)
+    {
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.rows = new LinkedHashMap<List<Object>, Row>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Row> eldest)
+            {
+                if (size() <= SecondLevelCache.this.capacity)
+                    return false;
+                evictions.incrementAndGet();
+                return true;
+            }
+        };
+        this.invalidations = new LinkedHashMap<List<Object>, Long>()
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Long> eldest)
+            {
+                if (size() <= SecondLevelCache.this.capacity)
+                    return false;
+                forgotten = Math.max(forgotten, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache of the given Model class.
+     * @param class_    The Model class.
+     * @return  The cache or null if caching is not enabled for the table of the class or the class has
+     * not been used yet.
+     */
+    public static SecondLevelCache of(Class<?> class_)
+    {
+        SchemaRegistry.TableSchema schema = SchemaRegistry.lookup(class_);
+        return schema == null ? null : schema.getCache();
+    }
+
+    /**
+     * Returns the values of the row with the given identity.
+     * @param identity  The identity of the row.
+     * @return  The values, which must not be modified, or null if the row is not cached.
+     */
+    synchronized FieldData get(List<Object> identity)
+    {
+        Row row = rows.get(identity);
+        if (row != null && row.expires < System.currentTimeMillis())
+        {
+            rows.remove(identity);
+            evictions.incrementAndGet();
+            row = null;
+        }
+        (row == null ? misses : hits).incrementAndGet();
+        return row == null ? null : row.values;
+    }
+
+    /**
+     * Returns the stamp to pass to put, to be taken before reading the row from the database.
+     * @return  The stamp.
+     */
+    synchronized long stamp()
+    {
+        return clock;
+    }
+
+    /**
+     * Puts the values of a row read from the database, unless the row was invalidated since the read began.
+     * @param identity  The identity of the row.
+     * @param values    The values, which must not be modified anymore.
+     * @param stamp     The stamp taken before the row was read.
+     * @return  True if the row was put.
+     */
+    synchronized boolean put(List<Object> identity, FieldData values, long stamp)
+    {
+        Long invalidated = invalidations.get(identity);
+        if (forgotten > stamp || invalidated != null && invalidated > stamp)
+            return false;
+        rows.put(identity, new Row(values, System.currentTimeMillis() + timeToLive));
+        return true;
+    }
+
+    synchronized void invalidate(List<Object> identity)
+    {
+        rows.remove(identity);
+        invalidations.remove(identity);
+        invalidations.put(identity, ++clock);
+    }
+
+    /**
+     * Removes all rows from the cache.
+     */
+    public synchronized void clear()
+    {
+        rows.clear();
+        invalidations.clear();
+        forgotten = ++clock;
+    }
+
+    /**
+     * Returns the number of rows currently kept.
+     * @return  The size of the cache.
+     */
+    public synchronized int size()
+    {
+        return rows.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of rows removed because the cache was full or the row expired.
+     * @return  The number of evictions.
+     */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the fraction of lookups that were answered by the cache.
+     * @return  The hit ratio, between 0 and 1.
+     */
+    public double getHitRatio()
+    {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SecondLevelCache{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() + '}';
+    }
+}
@@ -0,0 +1,273 @@
+package facades;
+
+import database.connect.ConnectionManager;
+import exception.DBException;
+import exception.UncheckedSQLException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * A database transaction spanning everything that is executed inside it. <br />
+ * All models and queries used within the scope run on one connection with auto-commit disabled, so a
+ * multi-step operation is atomic and costs a single commit. The transaction is committed when the work
+ * returns normally and rolled back when it throws, after which the exception is rethrown unchanged.
+ * A transaction is bound to the thread that started it and nested transactions join the outermost one:
+ * <pre>
+ * Transaction.run(() -> {
+ *     Fiets fiets = new Fiets().find(regnr);
+ *     fiets.setStatus(Status.herstel);
+ *     fiets.update();
+ * });
+ * </pre>
+ */
+public final class Transaction
+{
+    // The transaction of every thread, if any.
+    private static final ThreadLocal<Transaction> current = new ThreadLocal<>();
+
+    // The connection all queries of this transaction run on.
+    private final Connection connection;
+    // The isolation level of the connection before this transaction, -1 if unknown.
+    private int previousIsolation = -1;
+    // The actions to run once this transaction is committed.
+    private final ArrayList<Runnable> afterCommit = new ArrayList<>();
+
+    /**
+     * Work run in a transaction that returns a result.
+     * @param <R>   The type of the result.
+     * @param <E>   The type of the exception the work can throw.
+     */
+    @FunctionalInterface
+    public interface Work<R, E extends Exception>
+    {
+        R run() throws E;
+    }
+
+    /**
+     * Work run in a transaction without a result.
+     * @param <E>   The type of the exception the work can throw.
+     */
+    @FunctionalInterface
+    public interface Block<E extends Exception>
+    {
+        void run() throws E;
+    }
+
+    private Transaction(Connection connection)
+    {
+        this.connection = connection;
+    }
+
+    /**
+     * Runs the work in a transaction with the default isolation level of the connection.
+     * @param work  The work.
+     * @param <R>   The type of the result.
+     * @param <E>   The type of the exception the work can throw.
+     * @return  The result of the work.
+     * @throws E    The exception thrown by the work, after the transaction was rolled back.
+     */
+    public static <R, E extends Exception> R run(Work<R, E> work) throws E
+    {
+        return run(-1, work);
+    }
+
+    /**
+     * Runs the work in a transaction with the default isolation level of the connection.
+     * @param work  The work.
+     * @param <E>   The type of the exception the work can throw.
+     * @throws E    The exception thrown by the work, after the transaction was rolled back.
+     */
+    public static <E extends Exception> void run(Block<E> work) throws E
+    {
+        run(-1, work);
+    }
+
+    /**
+     * Runs the work in a transaction without a result.
+     * @param isolation The isolation level, one of the TRANSACTION constants of Connection.
+     * @param work      The work.
+     * @param <E>       The type of the exception the work can throw.
+     * @throws E    The exception thrown by the work, after the transaction was rolled back.
+     * @see #run(int, Work)
+     */
+    public static <E extends Exception> void run(int isolation, Block<E> work) throws E
+    {
+        run(isolation, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the work in a transaction with the given isolation level. When a transaction is already active on
+     * this thread, the work joins it and the isolation level of the outer transaction applies.
+     * @param isolation The isolation level, one of the TRANSACTION constants of Connection, or -1 for the
+     *                  default of the connection.
+     * @param work      The work.
+     * @param <R>       The type of the result.
+     * @param <E>       The type of the exception the work can throw.
+     * @return  The result of the work.
+     * @throws E    The exception thrown by the work, after the transaction was rolled back.
+     */
+    public static <R, E extends Exception> R run(int isolation, Work<R, E> work) throws E
+    {
+        if (current.get() != null)
+            return work.run();
+
+        Transaction transaction = begin(isolation);
+        current.set(transaction);
+        R result;
+        try {
+            result = work.run();
+        } catch (Exception | Error e) {
+            current.remove();
+            transaction.end(false);
+            throw e;
+        }
+        current.remove();
+        transaction.end(true);
+        for (Runnable x : transaction.afterCommit)
+            x.run();
+        return result;
+    }
+
+    /**
+     * Borrows a connection and starts a transaction on it.
+     */
+    private static Transaction begin(int isolation)
+    {
+        Connection connection;
+        try {
+            connection = ConnectionManager.getConnection();
+        } catch (DBException e) {
+            throw new UncheckedSQLException(new SQLException(e.getMessage(), e));
+        }
+        Transaction transaction = new Transaction(connection);
+        try {
+            transaction.previousIsolation = connection.getTransactionIsolation();
+            if (isolation != -1)
+                connection.setTransactionIsolation(isolation);
+            connection.setAutoCommit(false);
+            return transaction;
+        } catch (SQLException e) {
+            transaction.close();
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    /**
+     * Commits or rolls back this transaction and returns the connection to the pool.
+     * @param commit    True to commit, false to roll back.
+     */
+    private void end(boolean commit)
+    {
+        try {
+            if (commit)
+                connection.commit();
+            else
+                connection.rollback();
+        } catch (SQLException e) {
+            if (!commit)
+                e.printStackTrace();
+            else {
+                rollback();
+                throw new UncheckedSQLException(e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Returns the transaction active on this thread.
+     * @return  The transaction or null if there is none.
+     */
+    static Transaction current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Returns whether a transaction is active on this thread.
+     * @return  True if a transaction is active.
+     */
+    public static boolean isActive()
+    {
+        return current.get() != null;
+    }
+
+    /**
+     * Runs the action once the active transaction is committed, or immediately when there is none. Actions
+     * are dropped when the transaction is rolled back. Use this to keep state outside the database, such as
+     * caches, in sync with committed data only.
+     * @param action    The action.
+     */
+    public static void afterCommit(Runnable action)
+    {
+        Transaction transaction = current.get();
+        if (transaction == null)
+            action.run();
+        else
+            transaction.afterCommit.add(action);
+    }
+
+    /**
+     * Returns the connection of this transaction. It must not be closed by the caller.
+     * @return  The connection.
+     */
+    Connection getConnection()
+    {
+        return connection;
+    }
+
+    /**
+     * Returns a view of the connection of this transaction for direct access, on which close has no effect,
+     * so code written to close the connections it gets does not end the transaction early.
+     * @return  The view.
+     */
+    Connection share()
+    {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && method.getParameterCount() == 0)
+                        return null;
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private void rollback()
+    {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Restores the connection to auto-commit with its previous isolation level and returns it to the pool.
+     */
+    private void close()
+    {
+        try {
+            connection.setAutoCommit(true);
+            if (previousIsolation != -1 && connection.getTransactionIsolation() != previousIsolation)
+                connection.setTransactionIsolation(previousIsolation);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
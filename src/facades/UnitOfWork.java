@@ -0,0 +1,159 @@
+package facades;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A scope in which every row is represented by at most one model instance. <br />
+ * Within a unit of work, finding a model by a primary key that was already found or stored before returns
+ * that same instance without querying the database. Because of this, the model returned by find must be
+ * used instead of the model find was called on. A unit of work is bound to the thread that began it and
+ * nested units of work join the outermost one:
+ * <pre>
+ * try (UnitOfWork work = UnitOfWork.begin()) {
+ *     Fiets fiets = new Fiets().find(regnr);
+ *     ...
+ *     new Fiets().find(regnr); // the same instance as fiets
+ * }
+ * </pre>
+ */
+public final class UnitOfWork implements AutoCloseable
+{
+    // The unit of work of every thread, if any.
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+    // The models known in this unit of work by their identity.
+    private final HashMap<List<Object>, Model<?>> identities = new HashMap<>();
+    // The identity of every known model, by the model instance.
+    private final IdentityHashMap<Model<?>, List<Object>> models = new IdentityHashMap<>();
+    // The number of begin calls that have not been closed yet.
+    private int depth = 1;
+
+    private UnitOfWork()
+    {
+    }
+
+    /**
+     * Begins a unit of work on this thread, or joins the one that is already active.
+     * @return  The unit of work, to be closed at the end of the scope.
+     */
+    public static UnitOfWork begin()
+    {
+        UnitOfWork work = current.get();
+        if (work == null)
+        {
+            work = new UnitOfWork();
+            current.set(work);
+        }
+        else
+            ++work.depth;
+        return work;
+    }
+
+    /**
+     * Returns the unit of work active on this thread.
+     * @return  The unit of work or null if there is none.
+     */
+    static UnitOfWork current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Ends this scope. The identities are forgotten when the outermost scope ends.
+     */
+    @Override
+    public void close()
+    {
+        if (--depth == 0)
+        {
+            identities.clear();
+            models.clear();
+            current.remove();
+        }
+    }
+
+    /**
+     * Returns the number of models known in this unit of work.
+     * @return  The number of models.
+     */
+    public int size()
+    {
+        return identities.size();
+    }
+
+    /**
+     * Builds the identity of a row from its model class and the values of its primary keys.
+     * Values are compared by their string representation, just like they are sent to the database.
+     * @param class_    The model class.
+     * @param keys      The values of the primary keys, in key order.
+     * @return  The identity.
+     */
+    static List<Object> identity(Class<?> class_, Iterable<?> keys)
+    {
+        ArrayList<Object> identity = new ArrayList<>();
+        identity.add(class_);
+        for (Object x : keys)
+            identity.add(x == null ? null : x.toString());
+        return identity;
+    }
+
+    Model<?> lookup(List<Object> identity)
+    {
+        return identities.get(identity);
+    }
+
+    /**
+     * Returns whether the given instance is known in this unit of work, under any identity.
+     * @param model The model instance.
+     * @return  True if the instance is registered.
+     */
+    boolean contains(Model<?> model)
+    {
+        return models.containsKey(model);
+    }
+
+    /**
+     * Registers a model with the given identity. A model registered earlier with another identity, e.g.
+     * before its primary key was modified, is only known by the new identity afterwards.
+     * @param identity  The identity of the model.
+     * @param model     The model.
+     */
+    void register(List<Object> identity, Model<?> model)
+    {
+        List<Object> previous = models.put(model, identity);
+        if (previous != null && !previous.equals(identity) && identities.get(previous) == model)
+            identities.remove(previous);
+        Model<?> replaced = identities.put(identity, model);
+        if (replaced != null && replaced != model)
+            models.remove(replaced);
+    }
+
+    void forget(List<Object> identity)
+    {
+        Model<?> model = identities.remove(identity);
+        if (model != null)
+            models.remove(model);
+    }
+
+    /**
+     * Forgets every model of the given class, e.g. after deleting rows that are not known one by one.
+     * @param class_    The model class.
+     */
+    void forgetAll(Class<?> class_)
+    {
+        for (Iterator<Map.Entry<List<Object>, Model<?>>> x = identities.entrySet().iterator(); x.hasNext(); )
+        {
+            Map.Entry<List<Object>, Model<?>> entry = x.next();
+            if (entry.getKey().get(0) == class_)
+            {
+                models.remove(entry.getValue());
+                x.remove();
+            }
+        }
+    }
+}
@@ -2,12 +2,20 @@
 package transactie;
 
 import databag.Fiets;
+import database.FietsDB;
+import datatype.Status;
+import exception.ApplicationException;
 import facades.Repository;
+import facades.Transaction;
+import facades.UnitOfWork;
 
+import java.sql.Connection;
 import java.util.ArrayList;
 
 public class FietsTrans extends Repository implements InterfaceFietsTrans {
 
+    private final FietsDB fietsDB = new FietsDB();
+
     
     @Override
     public Integer toevoegenFiets(Fiets fiets)
@@ -19,27 +27,53 @@ public class FietsTrans extends Repository implements InterfaceFietsTrans {
     }
 
     @Override
-    public void wijzigenActiefNaarHerstel(Integer regnr)
+    public void wijzigenActiefNaarHerstel(Integer regnr) throws ApplicationException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        wijzigenToestand(regnr, Status.actief, Status.herstel);
     }
 
     @Override
-    public void wijzigenActiefNaarUitOmloop(Integer regnr)
+    public void wijzigenActiefNaarUitOmloop(Integer regnr) throws ApplicationException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        wijzigenToestand(regnr, Status.actief, Status.uit_omloop);
     }
 
     @Override
-    public void wijzigenHerstelNaarActief(Integer regnr)
+    public void wijzigenHerstelNaarActief(Integer regnr) throws ApplicationException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        wijzigenToestand(regnr, Status.herstel, Status.actief);
     }
 
     @Override
-    public void wijzigenHerstelNaarUitOmloop(Integer regnr)
+    public void wijzigenHerstelNaarUitOmloop(Integer regnr) throws ApplicationException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        wijzigenToestand(regnr, Status.herstel, Status.uit_omloop);
+    }
+
+    /**
+     * Wijzigt de status van een fiets als die de verwachte status heeft. Het lezen en wijzigen gebeuren in
+     * een serializable transactie, zodat de status tussendoor niet door een andere balie gewijzigd kan worden.
+     * Binnen de unit of work hergebruikt het wijzigen de al gelezen fiets, zodat die maar een keer gelezen wordt.
+     * @param regnr Het registratienummer van de fiets.
+     * @param van   De verwachte status.
+     * @param naar  De nieuwe status.
+     * @throws ApplicationException Als de fiets niet bestaat of niet de verwachte status heeft.
+     */
+    private void wijzigenToestand(Integer regnr, Status van, Status naar) throws ApplicationException
+    {
+        Transaction.run(Connection.TRANSACTION_SERIALIZABLE, () -> {
+            UnitOfWork work = UnitOfWork.begin();
+            try {
+                Fiets fiets = fietsDB.zoekFiets(regnr);
+                if (fiets == null || fiets.isEmpty())
+                    throw new ApplicationException("De fiets bestaat niet.");
+                if (fiets.getStatus() != van)
+                    throw new ApplicationException("De fiets heeft niet de status " + van + ".");
+                fietsDB.wijzigenToestandFiets(regnr, naar);
+            } finally {
+                work.close();
+            }
+        });
     }
 
     @Override
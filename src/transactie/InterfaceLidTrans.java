@@ -6,7 +6,8 @@
 package transactie;
 
 import databag.Lid;
-
+import facades.Page;
+
 ;
 
 import java.util.ArrayList;
@@ -26,4 +27,6 @@ public interface InterfaceLidTrans {
      Lid zoekLid(String rijksregisternummer) throws Exception;
 
      ArrayList<Lid> zoekAlleLeden() throws Exception;
+
+    Page<Lid> zoekLeden(int aantal, String vervolg, String filter) throws Exception;
 }
@@ -1,13 +1,17 @@
 package transactie;
 
 import databag.Lid;
-
+import database.LidDB;
+import facades.Page;
+
 ;
 
 import java.util.ArrayList;
 
 public class LidTrans implements InterfaceLidTrans {
 
+    private final LidDB lidDB = new LidDB();
+
     @Override
     public void toevoegenLid(Lid l)
     {
@@ -39,5 +43,18 @@ public class LidTrans implements InterfaceLidTrans {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
 
+    /**
+     * Zoekt een pagina leden, gefilterd door de database.
+     * @param aantal    Het maximale aantal leden op de pagina.
+     * @param vervolg   Het vervolgtoken van de vorige pagina of null voor de eerste pagina.
+     * @param filter    Het begin van de naam, voornaam of het rijksregisternummer, null of leeg voor alle leden.
+     * @return De pagina.
+     */
+    @Override
+    public Page<Lid> zoekLeden(int aantal, String vervolg, String filter)
+    {
+        return lidDB.zoekLeden(aantal, vervolg, filter);
+    }
+
    
 }
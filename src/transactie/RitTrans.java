@@ -6,59 +6,95 @@
 package transactie;
 
 import databag.Rit;
-
+import database.RitDB;
+import exception.ApplicationException;
+import facades.Transaction;
+
 ;
 
+import java.sql.Connection;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 
 public class RitTrans implements InterfaceRitTrans {
 
+    private final RitDB ritDB = new RitDB();
     
+    /**
+     * Voegt een rit toe nadat gecontroleerd is dat de fiets en het lid geen open rit meer hebben. De controle
+     * en het toevoegen gebeuren in een serializable transactie die de fiets en het lid vergrendelt, zodat twee
+     * balies niet tegelijk dezelfde fiets kunnen uitlenen: de tweede wacht tot de eerste klaar is en ziet dan
+     * diens rit.
+     * @param rit   De toe te voegen rit.
+     * @return Het ritID van de nieuwe rit.
+     * @throws ApplicationException Als de fiets of het lid nog een open rit heeft.
+     */
     @Override
-    public Integer toevoegenRit(Rit rit)
+    public Integer toevoegenRit(Rit rit) throws ApplicationException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        if (rit == null)
+            throw new ApplicationException("Er werd geen rit opgegeven.");
+        return Transaction.run(Connection.TRANSACTION_SERIALIZABLE, () -> {
+            if (!ritDB.zoekActieveRittenVanFiets(rit.getFietsRegistratienummer()).isEmpty())
+                throw new ApplicationException("De fiets heeft nog een open rit.");
+            if (!ritDB.zoekActieveRittenVanLid(rit.getLidRijksregisternummer()).isEmpty())
+                throw new ApplicationException("Het lid heeft nog een open rit.");
+            return ritDB.toevoegenRit(rit);
+        });
     }
 
+    /**
+     * Sluit een open rit af op het huidige tijdstip.
+     * @param id    Het ritID van de rit.
+     * @throws ApplicationException Als de rit niet bestaat of al afgesloten is.
+     */
     @Override
-    public void afsluitenRit(Integer id)
+    public void afsluitenRit(Integer id) throws ApplicationException
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        Transaction.run(() -> {
+            Rit rit = ritDB.zoekRit(id);
+            if (rit == null || rit.isEmpty())
+                throw new ApplicationException("De rit bestaat niet.");
+            if (!rit.isActief())
+                throw new ApplicationException("De rit is al afgesloten.");
+            rit.setEindtijd(LocalDateTime.now());
+            ritDB.afsluitenRit(rit);
+        });
     }
 
     
     @Override
-    public ArrayList zoekAlleRitten()
+    public ArrayList<Rit> zoekAlleRitten()
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return ritDB.zoekAlleRitten();
     }
 
     
     @Override
     public Rit zoekRit(Integer ritID)
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return ritDB.zoekRit(ritID);
     }
 
     
     @Override
     public Integer zoekEersteRitVanLid(String rr)
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return ritDB.zoekEersteRitVanLid(rr);
     }
 
     
     @Override
-    public ArrayList zoekActieveRittenVanLid(String rr)
+    public ArrayList<Rit> zoekActieveRittenVanLid(String rr)
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return ritDB.zoekActieveRittenVanLid(rr);
     }
 
     
     @Override
-    public ArrayList zoekActieveRittenVanFiets(Integer regnr)
+    public ArrayList<Rit> zoekActieveRittenVanFiets(Integer regnr)
     {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        return ritDB.zoekActieveRittenVanFiets(regnr);
     }
 
  
@@ -6,74 +6,147 @@
 package ui;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
-
+
 ;
 import ui.controller.LedenBeheerController;
 import ui.controller.StartschermController;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
+ * Elk scherm wordt maar een keer uit zijn FXML geladen en daarna bewaard. Navigeren vervangt enkel de
+ * root van de ene scene. Nadat het startscherm getoond is, worden de andere schermen vooraf geladen
+ * wanneer de JavaFX thread niets te doen heeft. Schermen die gegevens tonen laden die pas wanneer ze
+ * getoond worden, zodat een hergebruikt scherm nooit verouderde gegevens toont.
  *
  * @author Katrien.Deleu
  */
 public class VIVESbike extends Application {
 
+    private static final String STARTSCHERM = "view/Startscherm.fxml";
+    private static final String LEDENBEHEER = "view/LedenBeheer.fxml";
+
     private final Stage stage = new Stage();
+    // De geladen schermen per FXML bestand, in de volgorde waarin ze geladen werden.
+    private final LinkedHashMap<String, Scherm> schermen = new LinkedHashMap<>();
+    // De enige scene, waarvan de root bij het navigeren vervangen wordt.
+    private Scene scene;
+
+    /**
+     * Een geladen scherm, zijn controller en hoe lang het laden duurde.
+     */
+    private static class Scherm
+    {
+        final Parent root;
+        final Object controller;
+        // De laadtijd in nanoseconden.
+        final long laadtijd;
+
+        Scherm(Parent root, Object controller, long laadtijd)
+        {
+            this.root = root;
+            this.controller = controller;
+            this.laadtijd = laadtijd;
+        }
+    }
 
     @Override
     public void start(Stage primaryStage) throws Exception
     {
         showstartscherm();
         stage.show();
+        // Het controleren van het startscherm gaat voor, de rest wordt daarna een voor een geladen.
+        Platform.runLater(() -> voorladen(LEDENBEHEER));
     }
 
     private void showstartscherm()
     {
-        try {
-            FXMLLoader loader = new FXMLLoader(this.getClass().getResource("view/Startscherm.fxml"));
-            Parent root = loader.load();
-            StartschermController startscherm = loader.getController();
-            startscherm.setParent(this);
-
-            Scene scene = new Scene(root);
-            stage.setTitle("VIVESBike - Administratie");
-            stage.setScene(scene);
+        Scherm scherm = laadScherm(STARTSCHERM);
+        if (scherm != null)
+            toon(scherm, "VIVESBike - Administratie");
+    }
 
-        } catch (IOException e) {
-            System.out.println("SYSTEEMFOUT bij laden startscherm: " + e.getMessage());
+    public void laadLedenbeheer()
+    {
+        Scherm scherm = laadScherm(LEDENBEHEER);
+        if (scherm != null) {
+            toon(scherm, "Leden beheren");
+            ((LedenBeheerController) scherm.controller).geopend();
         }
     }
 
-   
+    /**
+     * Laadt de gegeven schermen vooraf, elk in een eigen beurt van de JavaFX thread zodat het tonen van
+     * het startscherm niet vertraagd wordt, en meldt daarna hoe lang elk scherm nodig had.
+     * @param views De FXML bestanden van de schermen.
+     */
+    private void voorladen(String... views)
+    {
+        if (views.length == 0) {
+            meldLaadtijden();
+            return;
+        }
+        laadScherm(views[0]);
+        String[] rest = new String[views.length - 1];
+        System.arraycopy(views, 1, rest, 0, rest.length);
+        Platform.runLater(() -> voorladen(rest));
+    }
 
-    public void laadLedenbeheer()
+    /**
+     * Geeft het scherm van het gegeven FXML bestand terug en laadt het de eerste keer.
+     * @param view  Het FXML bestand.
+     * @return Het scherm of null als het niet geladen kon worden.
+     */
+    private Scherm laadScherm(String view)
     {
+        Scherm scherm = schermen.get(view);
+        if (scherm != null)
+            return scherm;
         try {
-            FXMLLoader loader = new FXMLLoader(this.getClass().getResource(
-                    "view/LedenBeheer.fxml"));
-
-            // controller instellen
+            long begin = System.nanoTime();
+            FXMLLoader loader = new FXMLLoader(this.getClass().getResource(view));
             Parent root = loader.load();
-            LedenBeheerController controller = loader.getController();
+            Object controller = loader.getController();
 
             // referentie naar hier bewaren in de controller
-            controller.setParent(this);
+            if (controller instanceof StartschermController)
+                ((StartschermController) controller).setParent(this);
+            if (controller instanceof LedenBeheerController)
+                ((LedenBeheerController) controller).setParent(this);
+
+            scherm = new Scherm(root, controller, System.nanoTime() - begin);
+            schermen.put(view, scherm);
+            return scherm;
+        } catch (IOException e) {
+            System.out.println("SYSTEEMFOUT bij laden " + view + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-            Scene scene = new Scene(root);
-            stage.setTitle("Leden beheren");
+    private void toon(Scherm scherm, String titel)
+    {
+        if (scene == null) {
+            scene = new Scene(scherm.root);
             stage.setScene(scene);
-
-        }
-        catch (IOException e)
-        {
-            System.out.println("SYSTEEMFOUT bij laden ledenbeheer: " + e.getMessage());
         }
+        else if (scene.getRoot() != scherm.root)
+            scene.setRoot(scherm.root);
+        stage.setTitle(titel);
+    }
 
+    private void meldLaadtijden()
+    {
+        StringBuilder melding = new StringBuilder("Schermen geladen:");
+        for (Map.Entry<String, Scherm> x : schermen.entrySet())
+            melding.append(' ').append(x.getKey()).append(" (").append(x.getValue().laadtijd / 1000000).append(" ms)");
+        System.out.println(melding);
     }
 
     
@@ -5,23 +5,65 @@
  */
 package ui.controller;
 
+import databag.Lid;
+import facades.Page;
 import java.net.URL;
 import java.util.ResourceBundle;
+import javafx.animation.PauseTransition;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableRow;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.util.Duration;
+import transactie.LidTrans;
 
 import ui.VIVESbike;
 
 /**
  * FXML Controller class
  *
+ * De leden worden per pagina op de achtergrond geladen. De tabel toont enkel de zichtbare rijen en vraagt
+ * de volgende pagina op zodra er naar het einde van de geladen leden gescrold wordt. De zoekterm wordt
+ * door de database toegepast, zodat het scherm ook met zeer veel leden meteen opent. De leden worden pas
+ * geladen als het scherm getoond wordt, zie {@link #geopend()}.
+ *
  * @author Katrien.Deleu
  */
 public class LedenBeheerController implements Initializable
 {
+    // Het aantal leden dat per keer geladen wordt.
+    private static final int PAGINA = 200;
+    // Het aantal rijen voor het einde van de geladen leden waarop de volgende pagina al opgevraagd wordt.
+    private static final int VOORSPRONG = 50;
+
+    @FXML
+    private TableView<Lid> tblLeden;
+    @FXML
+    private TextField txtZoeken;
+    @FXML
+    private Label lblFout;
 
     // referentie naar VIVESbike (main)
     private VIVESbike parent;
 
+    private final LidTrans lidTrans = new LidTrans();
+    // De geladen leden, in de volgorde van de database.
+    private final ObservableList<Lid> leden = FXCollections.observableArrayList();
+    // Laadt de pagina's buiten de JavaFX thread.
+    private final PaginaLader lader = new PaginaLader();
+    // Er wordt pas gezocht als er even niet getypt wordt.
+    private final PauseTransition typPauze = new PauseTransition(Duration.millis(250));
+    // Het vervolgtoken van de volgende pagina, null als alle leden geladen zijn.
+    private String vervolg;
+    // De zoekterm van de geladen leden.
+    private String filter = "";
+
     /**
      * Referentie naar parent (start) instellen
      *
@@ -36,7 +78,96 @@ public class LedenBeheerController implements Initializable
     @Override
     public void initialize(URL location, ResourceBundle resources)
     {
+        lblFout.setText("");
+        tblLeden.setItems(leden);
+        tblLeden.setPlaceholder(new Label("Geen leden gevonden"));
+        // Enkel de zichtbare rijen krijgen een index, dus dit gebeurt pas als er naar het einde gescrold wordt.
+        tblLeden.setRowFactory(tabel -> new TableRow<Lid>()
+        {
+            @Override
+            public void updateIndex(int index)
+            {
+                super.updateIndex(index);
+                if (index >= 0 && index < leden.size() && index >= leden.size() - VOORSPRONG)
+                    laadVolgendePagina();
+            }
+        });
+
+        lader.setOnSucceeded(event -> {
+            Page<Lid> pagina = lader.getValue();
+            leden.addAll(pagina.getItems());
+            vervolg = pagina.getContinuationToken();
+        });
+        lader.setOnFailed(event -> lblFout.setText("Leden konden niet geladen worden: "
+                + lader.getException().getMessage()));
 
+        typPauze.setOnFinished(event -> zoeken(txtZoeken.getText()));
+        txtZoeken.textProperty().addListener((waarde, oud, nieuw) -> typPauze.playFromStart());
     }
 
+    /**
+     * Laadt de leden opnieuw telkens het scherm getoond wordt. Het scherm wordt vooraf geladen en daarna
+     * hergebruikt, dus de leden van een vorige keer kunnen ondertussen gewijzigd zijn.
+     */
+    public void geopend()
+    {
+        typPauze.stop();
+        zoeken(txtZoeken.getText());
+    }
+
+    /**
+     * Toont de leden die aan de zoekterm voldoen, te beginnen met de eerste pagina. Een pagina die nog
+     * geladen wordt voor de vorige zoekterm wordt geannuleerd.
+     * @param tekst De zoekterm.
+     */
+    private void zoeken(String tekst)
+    {
+        filter = tekst == null ? "" : tekst.trim();
+        leden.clear();
+        vervolg = null;
+        lblFout.setText("");
+        lader.laad(filter, null);
+    }
+
+    /**
+     * Laadt de volgende pagina, tenzij alle leden geladen zijn of er al een pagina geladen wordt.
+     */
+    private void laadVolgendePagina()
+    {
+        if (vervolg == null || lader.isRunning())
+            return;
+        lader.laad(filter, vervolg);
+    }
+
+    /**
+     * Laadt een pagina leden op een achtergrondthread.
+     */
+    private class PaginaLader extends Service<Page<Lid>>
+    {
+        private String filter;
+        private String vervolg;
+
+        void laad(String filter, String vervolg)
+        {
+            this.filter = filter;
+            this.vervolg = vervolg;
+            restart();
+        }
+
+        @Override
+        protected Task<Page<Lid>> createTask()
+        {
+            // De parameters worden hier, op de JavaFX thread, gelezen.
+            String filter = this.filter;
+            String vervolg = this.vervolg;
+            return new Task<Page<Lid>>()
+            {
+                @Override
+                protected Page<Lid> call()
+                {
+                    return lidTrans.zoekLeden(PAGINA, vervolg, filter);
+                }
+            };
+        }
+    }
 }
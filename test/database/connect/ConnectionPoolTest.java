@@ -0,0 +1,224 @@
+package database.connect;
+
+import exception.DBException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public class ConnectionPoolTest
+{
+    private final List<StubConnection> opened = new ArrayList<>();
+    private ConnectionPool pool;
+
+    /**
+     * The state of a physical connection, behind a Connection proxy without a database.
+     */
+    private static class StubConnection
+    {
+        boolean closed = false;
+        boolean autoCommit = true;
+        int rollbacks = 0;
+        Connection connection;
+    }
+
+    private synchronized Connection open()
+    {
+        StubConnection stub = new StubConnection();
+        stub.connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            stub.closed = true;
+                            return null;
+                        case "isClosed":
+                            return stub.closed;
+                        case "isValid":
+                            return !stub.closed;
+                        case "getAutoCommit":
+                            return stub.autoCommit;
+                        case "setAutoCommit":
+                            stub.autoCommit = (Boolean) args[0];
+                            return null;
+                        case "rollback":
+                            ++stub.rollbacks;
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return null;
+                    }
+                });
+        opened.add(stub);
+        return stub.connection;
+    }
+
+    private ConnectionPool pool(int minimum, int maximum, long idleTimeout, long borrowTimeout)
+    {
+        pool = new ConnectionPool(minimum, maximum, idleTimeout, borrowTimeout, 1, 10, 0, this::open);
+        return pool;
+    }
+
+    private StubConnection physical(Connection connection) throws SQLException
+    {
+        Connection unwrapped = connection.unwrap(Connection.class);
+        for (StubConnection x : opened)
+            if (x.connection == unwrapped)
+                return x;
+        fail("Geen fysieke connectie van de pool");
+        return null;
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Test
+    public void opensTheMinimumAtStart()
+    {
+        pool(2, 5, 60000, 100);
+        assertEquals(2, opened.size());
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    public void closeReturnsTheConnection() throws Exception
+    {
+        pool(0, 1, 60000, 100);
+        Connection connection = pool.borrow();
+        StubConnection physical = physical(connection);
+        assertEquals(0, pool.getIdleCount());
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertFalse(physical.closed);
+        assertEquals(1, pool.getIdleCount());
+        // Closing twice must not return the connection twice.
+        connection.close();
+        assertEquals(1, pool.getIdleCount());
+        try (Connection again = pool.borrow()) {
+            assertSame(physical, physical(again));
+        }
+        assertEquals(1, opened.size());
+    }
+
+    @Test(expected = SQLException.class)
+    public void returnedConnectionCannotBeUsed() throws Exception
+    {
+        pool(0, 1, 60000, 100);
+        Connection connection = pool.borrow();
+        connection.close();
+        connection.createStatement();
+    }
+
+    @Test
+    public void closeRollsBackAnUnfinishedTransaction() throws Exception
+    {
+        pool(0, 1, 60000, 100);
+        Connection connection = pool.borrow();
+        StubConnection physical = physical(connection);
+        connection.setAutoCommit(false);
+        connection.close();
+        assertEquals(1, physical.rollbacks);
+        assertTrue(physical.autoCommit);
+    }
+
+    @Test
+    public void borrowTimesOut() throws Exception
+    {
+        pool(0, 1, 60000, 200);
+        try (Connection connection = pool.borrow()) {
+            long start = System.nanoTime();
+            try {
+                pool.borrow();
+                fail("Verwacht: geen vrije connectie");
+            } catch (DBException e) {
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+            }
+        }
+    }
+
+    @Test
+    public void borrowWaitsForAReturnedConnection() throws Exception
+    {
+        pool(0, 1, 60000, 5000);
+        Connection connection = pool.borrow();
+        CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.borrow();
+            } catch (DBException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        StubConnection physical = physical(connection);
+        connection.close();
+        try (Connection next = waiting.get(1, TimeUnit.SECONDS)) {
+            assertSame(physical, physical(next));
+        }
+    }
+
+    @Test
+    public void neverHandsOutMoreThanTheMaximum() throws Exception
+    {
+        pool(0, 3, 60000, 100);
+        List<Connection> borrowed = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+            borrowed.add(pool.borrow());
+        try {
+            pool.borrow();
+            fail("Verwacht: geen vrije connectie");
+        } catch (DBException expected) {
+        }
+        assertEquals(3, opened.size());
+        borrowed.get(0).close();
+        borrowed.set(0, pool.borrow());
+        assertEquals(3, opened.size());
+        for (Connection x : borrowed)
+            x.close();
+        assertEquals(3, pool.getIdleCount());
+    }
+
+    @Test
+    public void evictsIdleConnectionsDownToTheMinimum() throws Exception
+    {
+        pool(1, 3, 50, 100);
+        List<Connection> borrowed = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+            borrowed.add(pool.borrow());
+        for (Connection x : borrowed)
+            x.close();
+        assertEquals(3, pool.getIdleCount());
+        Thread.sleep(100);
+        pool.evictIdle();
+        assertEquals(1, pool.getIdleCount());
+        int closed = 0;
+        for (StubConnection x : opened)
+            closed += x.closed ? 1 : 0;
+        assertEquals(2, closed);
+    }
+
+    @Test
+    public void replacesAnInvalidConnection() throws Exception
+    {
+        pool(0, 1, 60000, 100);
+        Connection connection = pool.borrow();
+        StubConnection physical = physical(connection);
+        connection.close();
+        physical.closed = true;
+        try (Connection next = pool.borrow()) {
+            assertNotSame(physical, physical(next));
+        }
+        assertEquals(2, opened.size());
+    }
+}
@@ -0,0 +1,186 @@
+package facades;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public class FieldDataTest
+{
+    private static final int ID = 0, GEWICHT = 1, PRIJS = 2, NAAM = 3, BEDRAG = 4;
+    private static FieldLayout layout;
+    private FieldData fields;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        LinkedHashMap<String, Class<?>> types = new LinkedHashMap<>();
+        types.put("id", Integer.class);
+        types.put("gewicht", Float.class);
+        types.put("prijs", Double.class);
+        types.put("naam", String.class);
+        types.put("bedrag", BigDecimal.class);
+        layout = new FieldLayout(types);
+    }
+
+    @Before
+    public void setUpEach()
+    {
+        fields = new FieldData(layout);
+        fields.set(ID, 7);
+        fields.set(GEWICHT, 1.5f);
+        fields.set(PRIJS, 2.25);
+        fields.set(NAAM, "fiets");
+        fields.set(BEDRAG, new BigDecimal("3.10"));
+        fields.markClean();
+    }
+
+    @Test
+    public void newFieldsAreNull()
+    {
+        FieldData empty = new FieldData(layout);
+        assertTrue(empty.isEmpty());
+        for (int i = 0; i < layout.size(); ++i)
+        {
+            assertTrue(empty.isNull(i));
+            assertNull(empty.get(i));
+        }
+    }
+
+    @Test
+    public void getReturnsTheValues()
+    {
+        assertEquals(7, fields.get(ID));
+        assertEquals(7, fields.getInt(ID));
+        assertEquals(1.5f, fields.get(GEWICHT));
+        assertEquals(2.25, fields.get(PRIJS));
+        assertEquals("fiets", fields.get(NAAM));
+        assertEquals(new BigDecimal("3.10"), fields.get(BEDRAG));
+        assertFalse(fields.isEmpty());
+    }
+
+    @Test
+    public void setNullClearsEveryKind()
+    {
+        for (int i = 0; i < layout.size(); ++i)
+        {
+            fields.set(i, null);
+            assertTrue(fields.isNull(i));
+            assertNull(fields.get(i));
+        }
+        assertTrue(fields.isEmpty());
+    }
+
+    @Test
+    public void setNullStringClearsEveryKind()
+    {
+        for (int i = 0; i < layout.size(); ++i)
+        {
+            fields.set(i, "NULL");
+            assertTrue(fields.isNull(i));
+            assertNull(fields.get(i));
+        }
+        assertTrue(fields.isEmpty());
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void setChecksTheType()
+    {
+        fields.set(ID, "7");
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void setIntChecksTheType()
+    {
+        fields.setInt(NAAM, 7);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getIntOfNull()
+    {
+        fields.set(ID, null);
+        fields.getInt(ID);
+    }
+
+    @Test
+    public void cleanFieldsAreNotDirty()
+    {
+        for (int i = 0; i < layout.size(); ++i)
+        {
+            assertFalse(fields.isDirty(i));
+            assertEquals(fields.get(i), fields.getOriginal(i));
+        }
+    }
+
+    @Test
+    public void setMakesDirtyAndKeepsTheOriginal()
+    {
+        fields.setInt(ID, 8);
+        fields.set(NAAM, null);
+        assertTrue(fields.isDirty(ID));
+        assertTrue(fields.isDirty(NAAM));
+        assertFalse(fields.isDirty(PRIJS));
+        assertEquals(7, fields.getOriginal(ID));
+        assertEquals("fiets", fields.getOriginal(NAAM));
+        assertEquals(8, fields.get(ID));
+        assertNull(fields.get(NAAM));
+    }
+
+    @Test
+    public void setBackToTheOriginalIsNotDirty()
+    {
+        fields.set(PRIJS, 9.0);
+        fields.set(PRIJS, 2.25);
+        fields.set(NAAM, "fiets");
+        assertFalse(fields.isDirty(PRIJS));
+        assertFalse(fields.isDirty(NAAM));
+    }
+
+    @Test
+    public void markCleanMakesTheValuesOriginal()
+    {
+        fields.set(GEWICHT, 4.0f);
+        fields.markClean();
+        assertFalse(fields.isDirty(GEWICHT));
+        assertEquals(4.0f, fields.getOriginal(GEWICHT));
+    }
+
+    @Test
+    public void setConvertedConvertsNumbers()
+    {
+        fields.setConverted(ID, 42L);
+        fields.setConverted(GEWICHT, 2);
+        fields.setConverted(PRIJS, new BigDecimal("1.5"));
+        fields.setConverted(BEDRAG, BigInteger.TEN);
+        fields.setConverted(NAAM, 12);
+        assertEquals(42, fields.get(ID));
+        assertEquals(2.0f, fields.get(GEWICHT));
+        assertEquals(1.5, fields.get(PRIJS));
+        assertEquals(new BigDecimal("10"), fields.get(BEDRAG));
+        assertEquals("12", fields.get(NAAM));
+        assertTrue(fields.isDirty(ID));
+        assertEquals(7, fields.getOriginal(ID));
+    }
+
+    @Test
+    public void setConvertedClearsNull()
+    {
+        fields.setConverted(ID, null);
+        fields.setConverted(NAAM, "NULL");
+        assertTrue(fields.isNull(ID));
+        assertTrue(fields.isNull(NAAM));
+    }
+
+    @Test
+    public void copyIsCleanAndEqual()
+    {
+        fields.set(NAAM, "step");
+        FieldData copy = fields.copy();
+        assertEquals(fields, copy);
+        assertEquals(fields.hashCode(), copy.hashCode());
+        assertFalse(copy.isDirty(NAAM));
+        copy.set(NAAM, "tandem");
+        assertEquals("step", fields.get(NAAM));
+    }
+}
@@ -3,7 +3,9 @@ package facades;
 import database.connect.ConnectionManager;
 import exception.DBException;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import static org.junit.Assert.*;
 import org.junit.*;
@@ -12,18 +14,28 @@ import org.junit.*;
 class QueryBuilderTest
 {
     private QueryBuilder builder;
+    private Connection connection;
     private final static String TEST_TABLE = "unit_test_table";
 
     @BeforeClass
     static void setUp() throws DBException, SQLException
     {
-        ConnectionManager.getConnection().prepareStatement("CREATE TABLE " + TEST_TABLE + " (test1 TEXT, test2 INT)").execute();
+        try (Connection connection = ConnectionManager.getConnection()) {
+            connection.prepareStatement("CREATE TABLE " + TEST_TABLE + " (test1 TEXT, test2 INT)").execute();
+        }
     }
 
     @Before
     void setUpEach() throws DBException
     {
-        builder = new QueryBuilder(ConnectionManager.getConnection(), TEST_TABLE);
+        connection = ConnectionManager.getConnection();
+        builder = new QueryBuilder(connection, TEST_TABLE);
+    }
+
+    @After
+    void tearDownEach() throws SQLException
+    {
+        connection.close();
     }
 
     @Test
@@ -51,7 +63,8 @@ class QueryBuilderTest
     void selectByCompare()
     {
         builder.select("test1").where(Comparator.EQ("test1", "vrolijke vrienden"));
-        assertEquals("SELECT test1 FROM " + TEST_TABLE + " WHERE test1 = 'vrolijke vrienden'", builder.toSql());
+        assertEquals("SELECT test1 FROM " + TEST_TABLE + " WHERE test1 = ?", builder.toSql());
+        assertEquals(Arrays.asList("vrolijke vrienden"), builder.getParameters());
     }
 
     @Test
@@ -59,7 +72,8 @@ class QueryBuilderTest
     {
         builder.select("test1") .where(Comparator.LIKE("test1", "%v*vrienden%"))
                                 .where(Comparator.GT("test2", "abc"));
-        assertEquals("SELECT test1 FROM "+TEST_TABLE+" WHERE test1 LIKE '%v*vrienden%', test2 > 'abc'", builder.toSql());
+        assertEquals("SELECT test1 FROM "+TEST_TABLE+" WHERE test1 LIKE ? AND test2 > ?", builder.toSql());
+        assertEquals(Arrays.asList("%v*vrienden%", "abc"), builder.getParameters());
     }
 
     @Test
@@ -67,7 +81,44 @@ class QueryBuilderTest
     {
         builder.select("test1") .where(new Comparator[]{Comparator.LIKE("test1", "%v*vrienden%"),
                                                         Comparator.GT("test2",  "abc")});
-        assertEquals("SELECT test1 FROM "+TEST_TABLE+" WHERE test1 LIKE '%v*vrienden%', test2 > 'abc'", builder.toSql());
+        assertEquals("SELECT test1 FROM "+TEST_TABLE+" WHERE test1 LIKE ? AND test2 > ?", builder.toSql());
+        assertEquals(Arrays.asList("%v*vrienden%", "abc"), builder.getParameters());
+    }
+
+    @Test
+    void selectByPredicateTree()
+    {
+        builder.select("test1").where(Comparator.EQ("test1", "a")
+                .and(Comparator.OR(Comparator.IN("test2", "1", "2"), Comparator.ISNULL("test2")))
+                .and(Comparator.NOT(Comparator.BETWEEN("test2", "5", "9"))));
+        assertEquals("SELECT test1 FROM " + TEST_TABLE + " WHERE test1 = ? AND (test2 IN (?, ?) OR test2 IS NULL)" +
+                " AND (NOT test2 BETWEEN ? AND ?)", builder.toSql());
+        assertEquals(Arrays.asList("a", "1", "2", "5", "9"), builder.getParameters());
+    }
+
+    @Test
+    void selectOrderedPage()
+    {
+        builder.select("test1").where("test2", "1").orderBy("test1").orderByDescending("test2").limit(10).offset(20);
+        assertEquals("SELECT test1 FROM " + TEST_TABLE + " WHERE test2 = ? ORDER BY test1, test2 DESC LIMIT 10 OFFSET 20",
+                builder.toSql());
+        assertEquals(Arrays.asList("1"), builder.getParameters());
+    }
+
+    @Test
+    void selectTypedValues()
+    {
+        builder.select("test1").where(Comparator.GT("test2", 9).or(Comparator.EQ("test2", 10).and(Comparator.GT("test1", "a"))));
+        assertEquals("SELECT test1 FROM " + TEST_TABLE + " WHERE test2 > ? OR (test2 = ? AND test1 > ?)", builder.toSql());
+        assertEquals(Arrays.<Object>asList(9, 10, "a"), builder.getParameters());
+    }
+
+    @Test
+    void selectGrouped()
+    {
+        builder.select(new String[]{"test1", "COUNT(*)"}).where("test2", "1").groupBy("test1").orderBy("test1");
+        assertEquals("SELECT test1, COUNT(*) FROM " + TEST_TABLE + " WHERE test2 = ? GROUP BY test1 ORDER BY test1",
+                builder.toSql());
     }
 
     @Test
@@ -98,16 +149,19 @@ class QueryBuilderTest
     void simpleInsertionQuery()
     {
         builder.insert("test1", "Hallo");
-        assertEquals("INSERT INTO "+TEST_TABLE+" (test1) VALUES ('Hallo')", builder.toSql());
+        assertEquals("INSERT INTO "+TEST_TABLE+" (test1) VALUES (?)", builder.toSql());
+        assertEquals(Arrays.asList("Hallo"), builder.getParameters());
     }
 
     @Test
     void multipleInsertionQuery()
     {
         builder.insert("test1", "Hallo").insert("test2",  "1");
-        String  perm1 = "INSERT INTO "+TEST_TABLE+" (test1, test2) VALUES ('Hallo', '1')",
-                perm2 = "INSERT INTO "+TEST_TABLE+" (test2, test1) VALUES ('1', 'Hallo')";
-        assertTrue(perm1.equals(builder.toSql()) || perm2.equals(builder.toSql()));
+        String  perm1 = "INSERT INTO "+TEST_TABLE+" (test1, test2) VALUES (?, ?)",
+                perm2 = "INSERT INTO "+TEST_TABLE+" (test2, test1) VALUES (?, ?)";
+        String sql = builder.toSql();
+        assertTrue(perm1.equals(sql) && Arrays.asList("Hallo", "1").equals(builder.getParameters()) ||
+                   perm2.equals(sql) && Arrays.asList("1", "Hallo").equals(builder.getParameters()));
     }
 
     @Test
@@ -116,7 +170,8 @@ class QueryBuilderTest
         HashMap<String, String> insertions = new HashMap<>();
         insertions.put("test1",  "hoihoi");
         builder.insert(insertions);
-        assertEquals("INSERT INTO "+TEST_TABLE+" (test1) VALUES ('hoihoi')", builder.toSql());
+        assertEquals("INSERT INTO "+TEST_TABLE+" (test1) VALUES (?)", builder.toSql());
+        assertEquals(Arrays.asList("hoihoi"), builder.getParameters());
     }
 
     @Test
@@ -125,25 +180,30 @@ class QueryBuilderTest
         HashMap<String, String> insertions = new HashMap<>();
         insertions.put("test1",  "Hallo");
         builder.insert("test2", "1").insert(insertions);
-        String  perm1 = "INSERT INTO "+TEST_TABLE+" (test1, test2) VALUES ('Hallo', '1')",
-                perm2 = "INSERT INTO "+TEST_TABLE+" (test2, test1) VALUES ('1', 'Hallo')";
-        assertTrue(perm1.equals(builder.toSql()) || perm2.equals(builder.toSql()));
+        String  perm1 = "INSERT INTO "+TEST_TABLE+" (test1, test2) VALUES (?, ?)",
+                perm2 = "INSERT INTO "+TEST_TABLE+" (test2, test1) VALUES (?, ?)";
+        String sql = builder.toSql();
+        assertTrue(perm1.equals(sql) && Arrays.asList("Hallo", "1").equals(builder.getParameters()) ||
+                   perm2.equals(sql) && Arrays.asList("1", "Hallo").equals(builder.getParameters()));
     }
 
     @Test
     void simpleUpdateQuery()
     {
         builder.update("test1", "Hallo");
-        assertEquals("UPDATE "+TEST_TABLE+" SET test1 = 'Hallo'", builder.toSql());
+        assertEquals("UPDATE "+TEST_TABLE+" SET test1 = ?", builder.toSql());
+        assertEquals(Arrays.asList("Hallo"), builder.getParameters());
     }
 
     @Test
     void multipleUpdateQuery()
     {
         builder.update("test1", "Hallo").update("test2",  "1");
-        String  perm1 = "UPDATE "+TEST_TABLE+" SET test1 = 'Hallo', test2 = '1'",
-                perm2 = "UPDATE "+TEST_TABLE+" SET test2 = '1', test1 = 'Hallo'";
-        assertTrue(perm1.equals(builder.toSql()) || perm2.equals(builder.toSql()));
+        String  perm1 = "UPDATE "+TEST_TABLE+" SET test1 = ?, test2 = ?",
+                perm2 = "UPDATE "+TEST_TABLE+" SET test2 = ?, test1 = ?";
+        String sql = builder.toSql();
+        assertTrue(perm1.equals(sql) && Arrays.asList("Hallo", "1").equals(builder.getParameters()) ||
+                   perm2.equals(sql) && Arrays.asList("1", "Hallo").equals(builder.getParameters()));
     }
 
     @Test
@@ -152,7 +212,8 @@ class QueryBuilderTest
         HashMap<String, String> updates = new HashMap<>();
         updates.put("test1",  "hoihoi");
         builder.update(updates);
-        assertEquals("UPDATE "+TEST_TABLE+" SET test1 = 'hoihoi'", builder.toSql());
+        assertEquals("UPDATE "+TEST_TABLE+" SET test1 = ?", builder.toSql());
+        assertEquals(Arrays.asList("hoihoi"), builder.getParameters());
     }
 
     @Test
@@ -161,21 +222,43 @@ class QueryBuilderTest
         HashMap<String, String> updates = new HashMap<>();
         updates.put("test1",  "Hallo");
         builder.update("test2", "1").update(updates);
-        String  perm1 = "UPDATE "+TEST_TABLE+" SET test1 = 'Hallo', test2 = '1'",
-                perm2 = "UPDATE "+TEST_TABLE+" SET test2 = '1', test1 = 'Hallo'";
-        assertTrue(perm1.equals(builder.toSql()) || perm2.equals(builder.toSql()));
+        String  perm1 = "UPDATE "+TEST_TABLE+" SET test1 = ?, test2 = ?",
+                perm2 = "UPDATE "+TEST_TABLE+" SET test2 = ?, test1 = ?";
+        String sql = builder.toSql();
+        assertTrue(perm1.equals(sql) && Arrays.asList("Hallo", "1").equals(builder.getParameters()) ||
+                   perm2.equals(sql) && Arrays.asList("1", "Hallo").equals(builder.getParameters()));
     }
 
     @Test
     void updateAndCompare()
     {
         builder.update("test1", "new value").where("test1", "hallo");
-        assertEquals("UPDATE "+TEST_TABLE+" SET test1 = 'new value' WHERE test1 = 'hallo'", builder.toSql());
+        assertEquals("UPDATE "+TEST_TABLE+" SET test1 = ? WHERE test1 = ?", builder.toSql());
+        assertEquals(Arrays.asList("new value", "hallo"), builder.getParameters());
+    }
+
+    @Test
+    void sameShapeSameSql()
+    {
+        String first = builder.select("test1").where("test2", "1").toSql();
+        builder.reset();
+        assertEquals(first, builder.select("test1").where("test2", "2").toSql());
+        assertEquals(Arrays.asList("2"), builder.getParameters());
+    }
+
+    @Test
+    void sameShapeSharesTemplate()
+    {
+        String first = builder.update("test1", "a").where("test2", "1").toSql();
+        builder.reset();
+        assertSame(first, new QueryBuilder(connection, TEST_TABLE).update("test1", "b").where("test2", "2").toSql());
     }
 
     @AfterClass
     static void tearDown() throws DBException, SQLException
     {
-        ConnectionManager.getConnection().prepareStatement("DROP TABLE " + TEST_TABLE).execute();
+        try (Connection connection = ConnectionManager.getConnection()) {
+            connection.prepareStatement("DROP TABLE " + TEST_TABLE).execute();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package facades;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+/**
+ * The runtime decides which executor QueryExecutor uses, so both are created here directly. A cached
+ * thread pool stands in for the virtual thread executor, which also starts a thread per task.
+ */
+public class QueryExecutorTest
+{
+    private static final int LIMIT = 2;
+    private static final int TASKS = 8;
+
+    /**
+     * Runs more tasks than the limit and returns how many of them ran at the same time at most.
+     */
+    private static int maximumRunning(Executor executor) throws InterruptedException
+    {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximum = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(TASKS);
+        for (int i = 0; i < TASKS; i++)
+            executor.execute(() -> {
+                int now = running.incrementAndGet();
+                maximum.accumulateAndGet(now, Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return maximum.get();
+    }
+
+    @Test
+    public void fixedPoolRunsAtMostTheLimit() throws InterruptedException
+    {
+        assertEquals(LIMIT, maximumRunning(QueryExecutor.create(LIMIT, null)));
+    }
+
+    @Test
+    public void threadPerTaskRunsAtMostTheLimit() throws InterruptedException
+    {
+        ExecutorService perTask = Executors.newCachedThreadPool();
+        try {
+            assertEquals(LIMIT, maximumRunning(QueryExecutor.create(LIMIT, perTask)));
+        } finally {
+            perTask.shutdown();
+        }
+    }
+}
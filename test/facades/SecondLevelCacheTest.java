@@ -0,0 +1,120 @@
+package facades;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public class SecondLevelCacheTest
+{
+    private static FieldLayout layout;
+
+    @BeforeClass
+    public static void setUp()
+    {
+        layout = new FieldLayout(Collections.<String, Class<?>>singletonMap("id", Integer.class));
+    }
+
+    private static List<Object> key(int id)
+    {
+        return Arrays.<Object>asList(SecondLevelCacheTest.class, id);
+    }
+
+    private static FieldData row(int id)
+    {
+        FieldData values = new FieldData(layout);
+        values.setInt(0, id);
+        values.markClean();
+        return values;
+    }
+
+    private static void put(SecondLevelCache cache, int id)
+    {
+        assertTrue(cache.put(key(id), row(id), cache.stamp()));
+    }
+
+    @Test
+    public void getReturnsWhatWasPut()
+    {
+        SecondLevelCache cache = new SecondLevelCache(10, 60000);
+        assertNull(cache.get(key(1)));
+        put(cache, 1);
+        assertEquals(row(1), cache.get(key(1)));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0);
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedRow()
+    {
+        SecondLevelCache cache = new SecondLevelCache(2, 60000);
+        put(cache, 1);
+        put(cache, 2);
+        cache.get(key(1));
+        put(cache, 3);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(key(2)));
+        assertNotNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(3)));
+    }
+
+    @Test
+    public void expiresRowsAfterTheTimeToLive() throws InterruptedException
+    {
+        SecondLevelCache cache = new SecondLevelCache(10, 50);
+        put(cache, 1);
+        assertNotNull(cache.get(key(1)));
+        Thread.sleep(100);
+        assertNull(cache.get(key(1)));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void invalidateRemovesTheRow()
+    {
+        SecondLevelCache cache = new SecondLevelCache(10, 60000);
+        put(cache, 1);
+        put(cache, 2);
+        cache.invalidate(key(1));
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(2)));
+    }
+
+    @Test
+    public void skipsRowsInvalidatedDuringTheRead()
+    {
+        SecondLevelCache cache = new SecondLevelCache(10, 60000);
+        long stamp = cache.stamp();
+        cache.invalidate(key(1));
+        assertFalse(cache.put(key(1), row(1), stamp));
+        assertNull(cache.get(key(1)));
+        // Other rows and reads begun after the invalidation are still cached.
+        assertTrue(cache.put(key(2), row(2), stamp));
+        assertTrue(cache.put(key(1), row(1), cache.stamp()));
+    }
+
+    @Test
+    public void skipsRowsReadBeforeAClear()
+    {
+        SecondLevelCache cache = new SecondLevelCache(10, 60000);
+        long stamp = cache.stamp();
+        cache.clear();
+        assertFalse(cache.put(key(1), row(1), stamp));
+        assertTrue(cache.put(key(1), row(1), cache.stamp()));
+    }
+
+    @Test
+    public void skipsRowsWhoseInvalidationWasForgotten()
+    {
+        SecondLevelCache cache = new SecondLevelCache(1, 60000);
+        long stamp = cache.stamp();
+        cache.invalidate(key(1));
+        cache.invalidate(key(2));
+        assertFalse(cache.put(key(1), row(1), stamp));
+        assertFalse(cache.put(key(3), row(3), stamp));
+    }
+}
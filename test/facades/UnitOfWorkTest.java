@@ -0,0 +1,160 @@
+package facades;
+
+import databag.Fiets;
+import datatype.Standplaats;
+import datatype.Status;
+import java.util.concurrent.CompletableFuture;
+import static org.junit.Assert.*;
+import org.junit.*;
+
+public class UnitOfWorkTest
+{
+    private final int key = 12345;
+
+    @Before
+    public void setUp()
+    {
+        Fiets fiets = new Fiets();
+        if (fiets.find(key).isEmpty())
+        {
+            fiets.setRegistratienummer(key);
+            fiets.setStandplaats(Standplaats.Kortrijk);
+            fiets.setStatus(Status.actief);
+            fiets.store();
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        assertNull("Een unit of work werd niet gesloten", UnitOfWork.current());
+        (new Fiets()).where(Comparator.GT("registratienummer", "0")).delete();
+    }
+
+    @Test
+    public void sameInstanceWithinUnit()
+    {
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            Fiets fiets = new Fiets().find(key);
+            assertSame(fiets, new Fiets().find(key));
+            assertEquals(1, work.size());
+        }
+    }
+
+    @Test
+    public void differentInstancesWithoutUnit()
+    {
+        assertNotSame(new Fiets().find(key), new Fiets().find(key));
+    }
+
+    @Test
+    public void nestedUnitJoinsOuterUnit()
+    {
+        try (UnitOfWork outer = UnitOfWork.begin())
+        {
+            Fiets fiets = new Fiets().find(key);
+            try (UnitOfWork inner = UnitOfWork.begin())
+            {
+                assertSame(outer, inner);
+                assertSame(fiets, new Fiets().find(key));
+            }
+            assertSame(outer, UnitOfWork.current());
+            assertSame(fiets, new Fiets().find(key));
+        }
+    }
+
+    @Test
+    public void noReuseAfterClose()
+    {
+        Fiets fiets;
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            fiets = new Fiets().find(key);
+        }
+        assertNull(UnitOfWork.current());
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            assertEquals(0, work.size());
+            assertNotSame(fiets, new Fiets().find(key));
+        }
+    }
+
+    @Test
+    public void noReuseAcrossThreads() throws Exception
+    {
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            Fiets fiets = new Fiets().find(key);
+            CompletableFuture<Fiets> other = CompletableFuture.supplyAsync(() -> {
+                try (UnitOfWork otherWork = UnitOfWork.begin())
+                {
+                    return new Fiets().find(key);
+                }
+            });
+            assertNotSame(fiets, other.get());
+            assertEquals(fiets, other.get());
+            assertSame(fiets, new Fiets().find(key));
+        }
+    }
+
+    @Test
+    public void reusedModelKeepsItsRow()
+    {
+        Fiets andere = new Fiets();
+        andere.setRegistratienummer(key + 1);
+        andere.setStandplaats(Standplaats.Brugge);
+        andere.setStatus(Status.actief);
+        andere.store();
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            Fiets gedeeld = new Fiets();
+            Fiets eerste = gedeeld.find(key);
+            Fiets tweede = gedeeld.find(key + 1);
+            assertNotSame(eerste, tweede);
+            assertEquals((Integer) key, eerste.getRegistratienummer());
+            assertEquals((Integer) (key + 1), tweede.getRegistratienummer());
+            assertSame(eerste, new Fiets().find(key));
+        }
+    }
+
+    @Test
+    public void missingRowIsNotRegistered()
+    {
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            Fiets gedeeld = new Fiets();
+            Fiets gevonden = gedeeld.find(key);
+            assertTrue(gedeeld.find(key + 99).isEmpty());
+            assertEquals(1, work.size());
+            assertSame(gevonden, new Fiets().find(key));
+            assertTrue(new Fiets().find(key + 99).isEmpty());
+        }
+    }
+
+    @Test
+    public void deletedRowsAreForgotten()
+    {
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            new Fiets().find(key);
+            new Fiets().where("registratienummer", String.valueOf(key)).delete();
+            assertEquals(0, work.size());
+            assertTrue(new Fiets().find(key).isEmpty());
+        }
+    }
+
+    @Test
+    public void storedModelIsKnown()
+    {
+        try (UnitOfWork work = UnitOfWork.begin())
+        {
+            Fiets fiets = new Fiets();
+            fiets.setRegistratienummer(key + 1);
+            fiets.setStandplaats(Standplaats.Brugge);
+            fiets.setStatus(Status.actief);
+            fiets.store();
+            assertSame(fiets, new Fiets().find(key + 1));
+        }
+    }
+}
@@ -1,62 +1,235 @@
 package transactie;
+import databag.Fiets;
+import databag.Lid;
+import databag.Rit;
+import datatype.Rijksregisternummer;
+import datatype.Standplaats;
+import datatype.Status;
+import exception.ApplicationException;
+import facades.Comparator;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.junit.Assert.*;
 import org.junit.*;
 
-class RitTransTest
+public class RitTransTest
 {
-    @Before
+    private final int fiets = 12345;
+    private final int andereFiets = 12346;
+    private final String lid = "90010100123";
+    private final String anderLid = "90010100222";
+    private RitTrans trans = new RitTrans();
 
-    void setUp()
+    @Before
+    public void setUp()
     {
-
+        for (int regnr : new int[]{fiets, andereFiets})
+        {
+            Fiets toevoegen = new Fiets();
+            if (toevoegen.find(regnr).isEmpty())
+            {
+                toevoegen.setRegistratienummer(regnr);
+                toevoegen.setStandplaats(Standplaats.Kortrijk);
+                toevoegen.setStatus(Status.actief);
+                toevoegen.store();
+            }
+        }
+        for (String rr : new String[]{lid, anderLid})
+        {
+            Lid toevoegen = new Lid();
+            if (toevoegen.find(rr).isEmpty())
+            {
+                toevoegen.setField("rijksregisternummer", rr);
+                toevoegen.setNaam("TEST");
+                toevoegen.setVoornaam("RIT");
+                toevoegen.store();
+            }
+        }
     }
 
     @After
+    public void tearDown()
+    {
+        (new Rit()).where(Comparator.IN("fietsRegistratienummer", String.valueOf(fiets),
+                String.valueOf(andereFiets))).delete();
+        (new Fiets()).where(Comparator.IN("registratienummer", String.valueOf(fiets),
+                String.valueOf(andereFiets))).delete();
+        (new Lid()).where(Comparator.IN("rijksregisternummer", lid, anderLid)).delete();
+    }
 
-    void tearDown()
+    private Rit rit(int regnr, String rr) throws ApplicationException
     {
+        Rit rit = new Rit();
+        rit.setStarttijd(LocalDateTime.now().withNano(0));
+        rit.setFietsRegistratienummer(regnr);
+        rit.setLidRijksregisternummer(new Rijksregisternummer(rr));
+        return rit;
+    }
 
+    private void assertGeweigerd(String boodschap, Callable<?> actie) throws Exception
+    {
+        try
+        {
+            actie.call();
+            fail("Verwacht: " + boodschap);
+        }
+        catch (ApplicationException e)
+        {
+            assertEquals(boodschap, e.getMessage());
+        }
     }
 
     @Test
-    void toevoegenRit()
+    public void toevoegenRit() throws Exception
     {
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        Rit toegevoegd = trans.zoekRit(ritID);
+        assertEquals((Integer) fiets, (Integer) toegevoegd.getFietsRegistratienummer());
+        assertEquals(lid, toegevoegd.getLidRijksregisternummer());
+        assertTrue(toegevoegd.isActief());
+    }
 
+    @Test
+    public void toevoegenRitZonderRit() throws Exception
+    {
+        assertGeweigerd("Er werd geen rit opgegeven.", () -> trans.toevoegenRit(null));
     }
 
     @Test
-    void afsluitenRit()
+    public void toevoegenRitFietsMetOpenRit() throws Exception
     {
+        trans.toevoegenRit(rit(fiets, lid));
+        assertGeweigerd("De fiets heeft nog een open rit.", () -> trans.toevoegenRit(rit(fiets, anderLid)));
+        assertEquals(1, trans.zoekActieveRittenVanFiets(fiets).size());
+        assertTrue(trans.zoekActieveRittenVanLid(anderLid).isEmpty());
+    }
 
+    @Test
+    public void toevoegenRitLidMetOpenRit() throws Exception
+    {
+        trans.toevoegenRit(rit(fiets, lid));
+        assertGeweigerd("Het lid heeft nog een open rit.", () -> trans.toevoegenRit(rit(andereFiets, lid)));
+        assertTrue(trans.zoekActieveRittenVanFiets(andereFiets).isEmpty());
     }
 
     @Test
-    void zoekAlleRitten()
+    public void toevoegenRitNaAfsluiten() throws Exception
     {
+        trans.afsluitenRit(trans.toevoegenRit(rit(fiets, lid)));
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        assertEquals(ritID, trans.zoekActieveRittenVanFiets(fiets).get(0).getRitID());
+    }
 
+    @Test
+    public void toevoegenRitGelijktijdig() throws Exception
+    {
+        // Twee balies lenen tegelijk dezelfde fiets uit aan een ander lid, slechts een van beide mag slagen.
+        ExecutorService balies = Executors.newFixedThreadPool(2);
+        try
+        {
+            List<Future<Integer>> ritten = new ArrayList<>();
+            for (String rr : new String[]{lid, anderLid})
+            {
+                Rit rit = rit(fiets, rr);
+                ritten.add(balies.submit(() -> trans.toevoegenRit(rit)));
+            }
+            int geslaagd = 0;
+            for (Future<Integer> rit : ritten)
+            {
+                try
+                {
+                    rit.get();
+                    ++geslaagd;
+                }
+                catch (java.util.concurrent.ExecutionException e)
+                {
+                    assertTrue(e.getCause() instanceof ApplicationException);
+                }
+            }
+            assertEquals(1, geslaagd);
+            assertEquals(1, trans.zoekActieveRittenVanFiets(fiets).size());
+        }
+        finally
+        {
+            balies.shutdown();
+        }
     }
 
     @Test
-    void zoekRit()
+    public void afsluitenRit() throws Exception
     {
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        trans.afsluitenRit(ritID);
+        Rit afgesloten = trans.zoekRit(ritID);
+        assertFalse(afgesloten.isActief());
+        assertFalse(afgesloten.getEindtijd().isBefore(afgesloten.getStarttijd()));
+        assertTrue(trans.zoekActieveRittenVanFiets(fiets).isEmpty());
+        assertTrue(trans.zoekActieveRittenVanLid(lid).isEmpty());
+    }
 
+    @Test
+    public void afsluitenRitBestaatNiet() throws Exception
+    {
+        assertGeweigerd("De rit bestaat niet.", () -> {
+            trans.afsluitenRit(-1);
+            return null;
+        });
     }
 
     @Test
-    void zoekEersteRitVanLid()
+    public void afsluitenRitAlAfgesloten() throws Exception
     {
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        trans.afsluitenRit(ritID);
+        LocalDateTime eindtijd = trans.zoekRit(ritID).getEindtijd();
+        assertGeweigerd("De rit is al afgesloten.", () -> {
+            trans.afsluitenRit(ritID);
+            return null;
+        });
+        assertEquals(eindtijd, trans.zoekRit(ritID).getEindtijd());
+    }
 
+    @Test
+    public void zoekAlleRitten() throws Exception
+    {
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        assertTrue(trans.zoekAlleRitten().contains(trans.zoekRit(ritID)));
     }
 
     @Test
-    void zoekActieveRittenVanLid()
+    public void zoekRit() throws Exception
     {
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        assertEquals(ritID, trans.zoekRit(ritID).getRitID());
+    }
 
+    @Test
+    public void zoekEersteRitVanLid() throws Exception
+    {
+        Integer eerste = trans.toevoegenRit(rit(fiets, lid));
+        trans.afsluitenRit(eerste);
+        trans.toevoegenRit(rit(fiets, lid));
+        assertEquals(eerste, trans.zoekEersteRitVanLid(lid));
     }
 
     @Test
-    void zoekActieveRittenVanFiets()
+    public void zoekActieveRittenVanLid() throws Exception
     {
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        assertEquals(ritID, trans.zoekActieveRittenVanLid(lid).get(0).getRitID());
+        assertTrue(trans.zoekActieveRittenVanLid(anderLid).isEmpty());
+    }
 
+    @Test
+    public void zoekActieveRittenVanFiets() throws Exception
+    {
+        Integer ritID = trans.toevoegenRit(rit(fiets, lid));
+        assertEquals(ritID, trans.zoekActieveRittenVanFiets(fiets).get(0).getRitID());
+        assertTrue(trans.zoekActieveRittenVanFiets(andereFiets).isEmpty());
     }
-}
\ No newline at end of file
+}